@@ -0,0 +1,90 @@
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+// Multi-threaded lookup benchmark: java.util.Properties (a synchronized
+// Hashtable) against the lock-free ConfigTable behind getProperty. Every thread
+// looks up keys in a loop for a fixed time; total lookups per second are
+// reported for 1, 2, 4, ... threads up to twice the core count.
+//
+// Usage: java ConfigBenchmark [keys] [seconds-per-run]
+public class ConfigBenchmark {
+
+    private static volatile int blackhole;
+
+    // Runs lookup on threads threads for the given time and returns lookups per second
+    static double run(Function<String, String> lookup, String[] keys, int threads, long millis)
+            throws InterruptedException {
+        LongAdder total = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        long[] deadline = new long[1];
+
+        for (int t = 0; t < threads; t++) {
+            int offset = t * 7919;
+            workers[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                long count = 0;
+                int found = 0;
+                int i = offset % keys.length;
+                while (System.nanoTime() < deadline[0]) {
+                    // Check the clock once per batch so it stays out of the measurement
+                    for (int j = 0; j < 1024; j++) {
+                        if (lookup.apply(keys[i]) != null) {
+                            found++;
+                        }
+                        // Wrap explicitly; an ever-growing index would overflow after 2^31 lookups
+                        if (++i == keys.length) {
+                            i = 0;
+                        }
+                    }
+                    count += 1024;
+                }
+                total.add(count);
+                blackhole += found;
+            });
+            workers[t].start();
+        }
+
+        deadline[0] = System.nanoTime() + millis * 1_000_000;
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return total.sum() * 1000.0 / millis;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int keyCount = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        long millis = (args.length > 1 ? Long.parseLong(args[1]) : 2) * 1000;
+
+        Properties properties = new Properties();
+        Map<String, String> entries = new HashMap<>();
+        String[] keys = new String[keyCount];
+        for (int i = 0; i < keyCount; i++) {
+            keys[i] = "service" + (i % 10) + ".setting." + i;
+            properties.setProperty(keys[i], "value-" + i);
+            entries.put(keys[i], "value-" + i);
+        }
+        ConfigTable table = new ConfigTable(entries);
+
+        // Warm both paths up before measuring
+        run(properties::getProperty, keys, 1, millis / 2);
+        run(table::get, keys, 1, millis / 2);
+
+        System.out.printf("%8s %18s %18s %8s%n", "threads", "Properties ops/s", "ConfigTable ops/s", "speedup");
+        int maxThreads = Runtime.getRuntime().availableProcessors() * 2;
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            double locked = run(properties::getProperty, keys, threads, millis);
+            double lockFree = run(table::get, keys, threads, millis);
+            System.out.printf("%8d %18.0f %18.0f %7.1fx%n", threads, locked, lockFree, lockFree / locked);
+        }
+    }
+}
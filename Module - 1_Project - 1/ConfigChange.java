@@ -0,0 +1,38 @@
+import java.util.Objects;
+
+// One key whose value differs between two configuration snapshots.
+// oldValue is null for an added key, newValue is null for a removed key.
+public final class ConfigChange {
+
+    private final String key;
+    private final String oldValue;
+    private final String newValue;
+
+    ConfigChange(String key, String oldValue, String newValue) {
+        this.key = key;
+        this.oldValue = oldValue;
+        this.newValue = newValue;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getOldValue() {
+        return oldValue;
+    }
+
+    public String getNewValue() {
+        return newValue;
+    }
+
+    // Folds a later change of the same key into this one; returns null if the two cancel out
+    ConfigChange then(ConfigChange later) {
+        return Objects.equals(oldValue, later.newValue) ? null : new ConfigChange(key, oldValue, later.newValue);
+    }
+
+    @Override
+    public String toString() {
+        return key + ": " + oldValue + " -> " + newValue;
+    }
+}
@@ -0,0 +1,175 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+// Compiles a properties file into a binary snapshot that is loaded by mapping
+// it into memory, skipping the text parser. Layout, little-endian:
+//   int magic, int version, long CRC32 of everything after it, long source size,
+//   long source modification time in nanoseconds, int entry count,
+//   then per entry, sorted by key: int key length, key bytes, int value length, value bytes (UTF-8).
+// The snapshot is named after its source with ".bin" appended and is only used
+// while the source's size and modification time are exactly the ones recorded,
+// its checksum matches and every length in it is in bounds; otherwise the
+// source is parsed as text.
+//
+// Usage: java ConfigCompiler <config.properties> [output]
+public final class ConfigCompiler {
+
+    static final String SUFFIX = ".bin";
+
+    private static final int MAGIC = 0x42474643; // "CFGB"
+    private static final int VERSION = 3;
+    private static final int CHECKED_FROM = 16;
+    private static final int SOURCE_SIZE = 16;
+    private static final int SOURCE_MODIFIED = 24;
+    private static final int COUNT = 32;
+    private static final int HEADER_SIZE = 36;
+
+    private ConfigCompiler() {
+    }
+
+    static Path snapshotOf(Path source) {
+        return source.resolveSibling(source.getFileName() + SUFFIX);
+    }
+
+    // Parses source and writes its snapshot to target, replacing any previous one atomically
+    static void compile(Path source, Path target) throws IOException {
+        // Read before the contents, so an edit made while parsing leaves the snapshot stale rather than wrong
+        BasicFileAttributes attributes = Files.readAttributes(source, BasicFileAttributes.class);
+        Properties properties = new Properties();
+        try (InputStream input = Files.newInputStream(source)) {
+            properties.load(input);
+        }
+
+        ConfigLayer entries = ConfigLayer.of(properties);
+        String[] keys = entries.keys;
+        byte[][] encoded = new byte[keys.length * 2][];
+        int size = HEADER_SIZE;
+        for (int i = 0; i < keys.length; i++) {
+            encoded[2 * i] = keys[i].getBytes(StandardCharsets.UTF_8);
+            encoded[2 * i + 1] = entries.values[i].getBytes(StandardCharsets.UTF_8);
+            size += 8 + encoded[2 * i].length + encoded[2 * i + 1].length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.position(HEADER_SIZE);
+        for (byte[] bytes : encoded) {
+            buffer.putInt(bytes.length).put(bytes);
+        }
+        buffer.putInt(0, MAGIC).putInt(4, VERSION).putInt(COUNT, keys.length);
+        buffer.putLong(SOURCE_SIZE, attributes.size());
+        buffer.putLong(SOURCE_MODIFIED, attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS));
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), CHECKED_FROM, size - CHECKED_FROM);
+        buffer.putLong(8, crc.getValue());
+
+        Path temp = Files.createTempFile(target.toAbsolutePath().getParent(), "config", ".tmp");
+        try {
+            Files.write(temp, buffer.array());
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // Returns the entries of source read from its snapshot, or null if there is no snapshot, it was
+    // compiled from a different version of source, or it cannot be read or is damaged in any way; the
+    // caller then parses source.
+    // The entries are stored sorted, so they become the layer's arrays as they are.
+    static ConfigLayer load(Path source) {
+        Path snapshot = snapshotOf(source);
+        try {
+            if (!Files.isRegularFile(snapshot)) {
+                return null;
+            }
+
+            MappedByteBuffer buffer;
+            try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+                if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+                    return damaged(snapshot);
+                }
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            }
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                return null;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(buffer.duplicate().position(CHECKED_FROM));
+            if (crc.getValue() != buffer.getLong(8)) {
+                return damaged(snapshot);
+            }
+            BasicFileAttributes attributes = Files.readAttributes(source, BasicFileAttributes.class);
+            if (buffer.getLong(SOURCE_SIZE) != attributes.size()
+                    || buffer.getLong(SOURCE_MODIFIED) != attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS)) {
+                return null;
+            }
+
+            // Every entry takes at least 8 bytes
+            int count = buffer.getInt(COUNT);
+            if (count < 0 || count > (buffer.limit() - HEADER_SIZE) / 8) {
+                return damaged(snapshot);
+            }
+            buffer.position(HEADER_SIZE);
+            String[] keys = new String[count];
+            String[] values = new String[count];
+            for (int i = 0; i < count; i++) {
+                keys[i] = readString(buffer);
+                values[i] = keys[i] == null ? null : readString(buffer);
+                if (values[i] == null || (i > 0 && keys[i - 1].compareTo(keys[i]) >= 0)) {
+                    return damaged(snapshot);
+                }
+            }
+            if (buffer.hasRemaining()) {
+                return damaged(snapshot);
+            }
+            return new ConfigLayer(keys, values);
+        } catch (IOException | RuntimeException ex) {
+            System.out.println("Ignoring unreadable configuration snapshot " + snapshot + ": " + ex);
+            return null;
+        }
+    }
+
+    private static ConfigLayer damaged(Path snapshot) {
+        System.out.println("Ignoring damaged configuration snapshot " + snapshot);
+        return null;
+    }
+
+    // Returns null if the length prefix is out of bounds
+    private static String readString(ByteBuffer buffer) {
+        if (buffer.remaining() < 4) {
+            return null;
+        }
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Usage: java ConfigCompiler <config.properties> [output]");
+            return;
+        }
+        Path source = Paths.get(args[0]);
+        Path target = args.length > 1 ? Paths.get(args[1]) : snapshotOf(source);
+        compile(source, target);
+        System.out.println("Compiled " + source + " to " + target + " (" + Files.size(target) + " bytes)");
+    }
+}
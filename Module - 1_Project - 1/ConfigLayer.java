@@ -0,0 +1,65 @@
+import java.util.Arrays;
+import java.util.Properties;
+
+// Configuration entries sorted by key, held in two parallel arrays that are
+// never modified once built. Layers are combined with a linear merge, and a
+// snapshot is built straight from the result, so a compiled snapshot that is
+// already sorted goes from the mapped file into the lookup table without any
+// intermediate map or sort.
+final class ConfigLayer {
+
+    static final ConfigLayer EMPTY = new ConfigLayer(new String[0], new String[0]);
+
+    // Sorted and distinct
+    final String[] keys;
+    final String[] values;
+
+    ConfigLayer(String[] keys, String[] values) {
+        this.keys = keys;
+        this.values = values;
+    }
+
+    static ConfigLayer of(Properties properties) {
+        String[] keys = properties.stringPropertyNames().toArray(new String[0]);
+        Arrays.sort(keys);
+        String[] values = new String[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            values[i] = properties.getProperty(keys[i]);
+        }
+        return new ConfigLayer(keys, values);
+    }
+
+    int size() {
+        return keys.length;
+    }
+
+    // Returns the entries of this layer and top, with top winning where both have a key.
+    // An empty side costs nothing: the other layer is returned as it is.
+    ConfigLayer overlay(ConfigLayer top) {
+        if (top.size() == 0) {
+            return this;
+        }
+        if (size() == 0) {
+            return top;
+        }
+        String[] mergedKeys = new String[size() + top.size()];
+        String[] mergedValues = new String[mergedKeys.length];
+        int i = 0;
+        int j = 0;
+        int n = 0;
+        while (i < size() || j < top.size()) {
+            int order = i == size() ? 1 : j == top.size() ? -1 : keys[i].compareTo(top.keys[j]);
+            if (order < 0) {
+                mergedKeys[n] = keys[i];
+                mergedValues[n++] = values[i++];
+            } else {
+                if (order == 0) {
+                    i++;
+                }
+                mergedKeys[n] = top.keys[j];
+                mergedValues[n++] = top.values[j++];
+            }
+        }
+        return new ConfigLayer(Arrays.copyOf(mergedKeys, n), Arrays.copyOf(mergedValues, n));
+    }
+}
@@ -0,0 +1,7 @@
+import java.util.List;
+
+// Receives the changes under a subscribed prefix, one batch per reload, sorted by key
+@FunctionalInterface
+public interface ConfigListener {
+    void onChange(List<ConfigChange> changes);
+}
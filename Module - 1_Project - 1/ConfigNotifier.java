@@ -0,0 +1,96 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Delivers configuration changes to subscribers on one dedicated daemon thread,
+// so a slow listener never holds up a reload. If a listener has not yet been
+// called for one reload when the next one arrives, the two batches are merged
+// into one, keeping the oldest old value and the newest new value of each key.
+final class ConfigNotifier {
+
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "config-notifier");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    void subscribe(String prefix, ConfigListener listener) {
+        subscriptions.add(new Subscription(prefix, listener));
+    }
+
+    void unsubscribe(ConfigListener listener) {
+        subscriptions.removeIf(subscription -> subscription.listener == listener);
+    }
+
+    // Hands the changes of one reload, sorted by key, to every subscriber with a matching prefix
+    void publish(List<ConfigChange> changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        for (Subscription subscription : subscriptions) {
+            List<ConfigChange> matching = new ArrayList<>();
+            for (ConfigChange change : changes) {
+                if (change.getKey().startsWith(subscription.prefix)) {
+                    matching.add(change);
+                }
+            }
+            if (!matching.isEmpty() && subscription.enqueue(matching)) {
+                executor.execute(subscription::deliver);
+            }
+        }
+    }
+
+    private static final class Subscription {
+
+        final String prefix;
+        final ConfigListener listener;
+
+        // Changes not yet delivered, or null when no delivery is scheduled; guarded by this
+        private Map<String, ConfigChange> pending;
+
+        Subscription(String prefix, ConfigListener listener) {
+            this.prefix = prefix;
+            this.listener = listener;
+        }
+
+        // Adds changes to the pending batch; returns true if a delivery has to be scheduled
+        synchronized boolean enqueue(List<ConfigChange> changes) {
+            boolean schedule = pending == null;
+            if (schedule) {
+                pending = new TreeMap<>();
+            }
+            for (ConfigChange change : changes) {
+                ConfigChange earlier = pending.get(change.getKey());
+                ConfigChange merged = earlier == null ? change : earlier.then(change);
+                if (merged == null) {
+                    pending.remove(change.getKey());
+                } else {
+                    pending.put(change.getKey(), merged);
+                }
+            }
+            return schedule;
+        }
+
+        void deliver() {
+            Map<String, ConfigChange> batch;
+            synchronized (this) {
+                batch = pending;
+                pending = null;
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            try {
+                listener.onChange(new ArrayList<>(batch.values()));
+            } catch (RuntimeException ex) {
+                ex.printStackTrace();
+            }
+        }
+    }
+}
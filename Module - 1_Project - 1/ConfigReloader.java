@@ -0,0 +1,85 @@
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+// Watches the directory of the configuration file on a daemon thread and runs
+// a reload action when the file is modified, created or renamed into place.
+// Events that arrive within the settle delay are coalesced into one reload.
+final class ConfigReloader implements Runnable {
+
+    private static final long SETTLE_MILLIS = 200;
+
+    private final Path file;
+    private final Runnable reload;
+    private final WatchService watchService;
+
+    private ConfigReloader(Path file, Runnable reload) throws IOException {
+        this.file = file.toAbsolutePath();
+        this.reload = reload;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.file.getParent().register(watchService,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_CREATE);
+    }
+
+    // Starts watching file; reload runs on the watcher thread
+    static ConfigReloader start(Path file, Runnable reload) throws IOException {
+        ConfigReloader reloader = new ConfigReloader(file, reload);
+        Thread thread = new Thread(reloader, "config-reloader");
+        thread.setDaemon(true);
+        thread.start();
+        return reloader;
+    }
+
+    void stop() throws IOException {
+        watchService.close();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean changed = drain(key);
+
+                // Let the writer finish, folding any further events into the same reload
+                WatchKey more;
+                while ((more = watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    changed |= drain(more);
+                }
+
+                if (changed) {
+                    // A failed reload must not end the watcher; the next change gets another try
+                    try {
+                        reload.run();
+                    } catch (RuntimeException ex) {
+                        ex.printStackTrace();
+                    }
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException ex) {
+            // Stopped
+        }
+    }
+
+    // Returns true if any event of the key is about the configuration file
+    private boolean drain(WatchKey key) {
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            Object context = event.context();
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                    || (context instanceof Path && file.getFileName().equals(context))) {
+                changed = true;
+            }
+        }
+        key.reset();
+        return changed;
+    }
+}
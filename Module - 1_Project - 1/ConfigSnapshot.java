@@ -0,0 +1,134 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+// Immutable result of one load of the configuration. A new snapshot is built
+// completely before it is published, so readers never see a half-loaded file.
+final class ConfigSnapshot {
+
+    static final ConfigSnapshot EMPTY = new ConfigSnapshot(new Properties());
+
+    private final ConfigTable table;
+
+    // All keys in sorted order with their values, so the keys under a prefix are one contiguous range
+    private final String[] sortedKeys;
+    private final String[] sortedValues;
+
+    ConfigSnapshot(Properties properties) {
+        this(ConfigLayer.of(properties));
+    }
+
+    // Uses the layer's sorted arrays as they are; layers are never modified
+    ConfigSnapshot(ConfigLayer entries) {
+        this.sortedKeys = entries.keys;
+        this.sortedValues = entries.values;
+        this.table = new ConfigTable(sortedKeys, sortedValues);
+    }
+
+    String get(String key) {
+        return table.get(key);
+    }
+
+    // Returns the parsed forms of a value, or null if the key is not set
+    ConfigValue getTyped(String key) {
+        return table.getTyped(key);
+    }
+
+    // Returns the entries whose key starts with prefix, in key order, with prefix removed from
+    // the keys if strip is set. Finds the range by binary search, so the cost depends only on
+    // the number of matching keys and the log of the total.
+    Map<String, String> byPrefix(String prefix, boolean strip) {
+        int from = Arrays.binarySearch(sortedKeys, prefix);
+        if (from < 0) {
+            from = -from - 1;
+        }
+        Map<String, String> result = new LinkedHashMap<>();
+        for (int i = from; i < sortedKeys.length && sortedKeys[i].startsWith(prefix); i++) {
+            String key = strip ? sortedKeys[i].substring(prefix.length()) : sortedKeys[i];
+            result.put(key, sortedValues[i]);
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    // Checks declared keys against this snapshot and returns one message per missing or invalid key
+    List<String> validate(Map<String, ConfigType> schema) {
+        List<String> problems = new ArrayList<>();
+        for (Map.Entry<String, ConfigType> entry : schema.entrySet()) {
+            ConfigValue value = table.getTyped(entry.getKey());
+            String problem = value == null ? "missing" : value.check(entry.getValue());
+            if (problem != null) {
+                problems.add(entry.getKey() + " (" + entry.getValue() + "): " + problem);
+            }
+        }
+        return problems;
+    }
+
+    // Checks the keys that typed getters have read from previous against their values here and returns
+    // one message per value that would now fail such a read. The read types are carried over to this
+    // snapshot's values, so they are checked on every later reload too. Keys in schema are left to
+    // validate. A removed key is not reported: a getter with a default handles it, and require() is
+    // how a key is made mandatory.
+    List<String> checkReads(ConfigSnapshot previous, Map<String, ConfigType> schema) {
+        List<String> problems = new ArrayList<>();
+        for (String key : previous.sortedKeys) {
+            int readAs = previous.table.getTyped(key).readAs();
+            ConfigValue value = table.getTyped(key);
+            if (readAs == 0 || value == null) {
+                continue;
+            }
+            value.inheritReadAs(readAs);
+            if (schema.containsKey(key)) {
+                continue;
+            }
+            for (ConfigType type : ConfigType.values()) {
+                String problem = (readAs & 1 << type.ordinal()) != 0 ? value.check(type) : null;
+                if (problem != null) {
+                    problems.add(key + " (read as " + type + "): " + problem);
+                }
+            }
+        }
+        return problems;
+    }
+
+    // Returns the keys added, removed or changed in newer, sorted by key. Both snapshots are
+    // sorted, so one merge pass over the two key arrays finds every change in order.
+    List<ConfigChange> diff(ConfigSnapshot newer) {
+        List<ConfigChange> changes = new ArrayList<>();
+        String[] newKeys = newer.sortedKeys;
+        String[] newValues = newer.sortedValues;
+        int i = 0;
+        int j = 0;
+        while (i < sortedKeys.length || j < newKeys.length) {
+            int order = i == sortedKeys.length ? 1 : j == newKeys.length ? -1 : sortedKeys[i].compareTo(newKeys[j]);
+            if (order < 0) {
+                changes.add(new ConfigChange(sortedKeys[i], sortedValues[i], null));
+                i++;
+            } else if (order > 0) {
+                changes.add(new ConfigChange(newKeys[j], null, newValues[j]));
+                j++;
+            } else {
+                if (!sortedValues[i].equals(newValues[j])) {
+                    changes.add(new ConfigChange(sortedKeys[i], sortedValues[i], newValues[j]));
+                }
+                i++;
+                j++;
+            }
+        }
+        return changes;
+    }
+
+    int size() {
+        return table.size();
+    }
+
+    // Copies the snapshot into a new Properties object
+    Properties toProperties() {
+        Properties properties = new Properties();
+        table.forEach(properties::setProperty);
+        return properties;
+    }
+}
@@ -0,0 +1,136 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+
+// The layered sources of the configuration, from lowest to highest precedence:
+//   1. config.properties on the classpath (defaults)
+//   2. the external file named by -Dconfig.file
+//   3. environment variables CONFIG_<KEY>, where DB_HOST means db.host and a double underscore means '_'
+//   4. system properties -Dconfig.<key>
+// A later layer overrides a key set by an earlier one. load() merges all of them
+// into one sorted ConfigLayer, so a lookup never walks the layers. Each file
+// layer is read from its ConfigCompiler snapshot when that is up to date; with
+// no other layer set, that snapshot's entries are used without being copied.
+final class ConfigSources {
+
+    static final String CLASSPATH_FILE = "config.properties";
+    static final String EXTERNAL_FILE_PROPERTY = "config.file";
+    static final String ENV_PREFIX = "CONFIG_";
+    static final String SYSTEM_PROPERTY_PREFIX = "config.";
+
+    private final ClassLoader classLoader;
+
+    // Plain-file locations of the two file layers, or null when there is none to watch
+    private final Path classpathFile;
+    private final Path externalFile;
+
+    ConfigSources(ClassLoader classLoader) {
+        this.classLoader = classLoader;
+        this.classpathFile = findClasspathFile(classLoader);
+        String external = System.getProperty(EXTERNAL_FILE_PROPERTY);
+        this.externalFile = external != null ? Paths.get(external).toAbsolutePath() : null;
+    }
+
+    // Files whose changes should trigger a reload
+    List<Path> watchedFiles() {
+        List<Path> files = new ArrayList<>();
+        if (classpathFile != null) {
+            files.add(classpathFile);
+        }
+        if (externalFile != null) {
+            files.add(externalFile);
+        }
+        return files;
+    }
+
+    // Reads every layer and merges them in precedence order
+    ConfigLayer load() throws IOException {
+        ConfigLayer merged = ConfigLayer.EMPTY;
+
+        if (classpathFile != null) {
+            try {
+                merged = loadFile(classpathFile);
+            } catch (NoSuchFileException ex) {
+                System.out.println("Sorry, unable to find " + CLASSPATH_FILE);
+            }
+        } else {
+            try (InputStream input = classLoader.getResourceAsStream(CLASSPATH_FILE)) {
+                if (input == null) {
+                    System.out.println("Sorry, unable to find " + CLASSPATH_FILE);
+                } else {
+                    // Load the properties file from the classpath
+                    Properties properties = new Properties();
+                    properties.load(input);
+                    merged = ConfigLayer.of(properties);
+                }
+            }
+        }
+
+        // A missing or unreadable external file counts as empty, so the other layers still apply;
+        // its directory stays watched, and the file is picked up once it appears
+        if (externalFile != null) {
+            try {
+                merged = merged.overlay(loadFile(externalFile));
+            } catch (IOException ex) {
+                System.out.println("Ignoring external configuration " + externalFile + ": " + ex);
+            }
+        }
+
+        // Environment variables and system properties form one layer, system properties last
+        Properties overrides = new Properties();
+        for (Map.Entry<String, String> variable : System.getenv().entrySet()) {
+            String name = variable.getKey();
+            if (name.startsWith(ENV_PREFIX) && name.length() > ENV_PREFIX.length()) {
+                overrides.setProperty(environmentKey(name.substring(ENV_PREFIX.length())), variable.getValue());
+            }
+        }
+
+        Properties system = System.getProperties();
+        for (String name : system.stringPropertyNames()) {
+            if (name.startsWith(SYSTEM_PROPERTY_PREFIX) && !name.equals(EXTERNAL_FILE_PROPERTY)) {
+                overrides.setProperty(name.substring(SYSTEM_PROPERTY_PREFIX.length()), system.getProperty(name));
+            }
+        }
+        return merged.overlay(ConfigLayer.of(overrides));
+    }
+
+    // Uses the compiled snapshot of file when it is current, otherwise parses the text
+    private static ConfigLayer loadFile(Path file) throws IOException {
+        ConfigLayer compiled = ConfigCompiler.load(file);
+        if (compiled != null) {
+            return compiled;
+        }
+        Properties properties = new Properties();
+        try (InputStream input = Files.newInputStream(file)) {
+            properties.load(input);
+        }
+        return ConfigLayer.of(properties);
+    }
+
+    // DB_HOST -> db.host, CACHE_MAX__SIZE -> cache.max_size
+    static String environmentKey(String name) {
+        return name.toLowerCase(Locale.ROOT).replace("__", "\0").replace('_', '.').replace('\0', '_');
+    }
+
+    private static Path findClasspathFile(ClassLoader classLoader) {
+        URL url = classLoader.getResource(CLASSPATH_FILE);
+        if (url == null || !"file".equals(url.getProtocol())) {
+            return null;
+        }
+        try {
+            return Paths.get(url.toURI());
+        } catch (URISyntaxException ex) {
+            return null;
+        }
+    }
+}
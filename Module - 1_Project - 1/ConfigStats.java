@@ -0,0 +1,86 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+// Access statistics for configuration keys. Every read bumps a LongAdder for
+// its key, which stripes the count across cells so hot keys read from many
+// threads do not contend. One lookup in SAMPLE_RATE is also timed into a
+// histogram with power-of-two buckets, keeping System.nanoTime off most reads.
+final class ConfigStats {
+
+    static final int SAMPLE_RATE = 64;
+
+    private final Map<String, LongAdder> reads = new ConcurrentHashMap<>();
+
+    // latency[i] counts sampled lookups that took [2^i, 2^(i+1)) nanoseconds
+    private final LongAdder[] latency = new LongAdder[Long.SIZE];
+
+    ConfigStats() {
+        for (int i = 0; i < latency.length; i++) {
+            latency[i] = new LongAdder();
+        }
+    }
+
+    String lookup(ConfigSnapshot snapshot, String key) {
+        count(key);
+        if (ThreadLocalRandom.current().nextInt(SAMPLE_RATE) != 0) {
+            return snapshot.get(key);
+        }
+        long start = System.nanoTime();
+        String value = snapshot.get(key);
+        long elapsed = Math.max(1, System.nanoTime() - start);
+        latency[63 - Long.numberOfLeadingZeros(elapsed)].increment();
+        return value;
+    }
+
+    void count(String key) {
+        LongAdder counter = reads.get(key);
+        if (counter == null) {
+            counter = reads.computeIfAbsent(key, k -> new LongAdder());
+        }
+        counter.increment();
+    }
+
+    // Lists the top most read keys, the keys in snapshot that were never read, and the latency histogram
+    String report(ConfigSnapshot snapshot, int top) {
+        List<Map.Entry<String, Long>> counts = new ArrayList<>();
+        long total = 0;
+        for (Map.Entry<String, LongAdder> entry : reads.entrySet()) {
+            long count = entry.getValue().sum();
+            counts.add(Map.entry(entry.getKey(), count));
+            total += count;
+        }
+        counts.sort((a, b) -> a.getValue().equals(b.getValue())
+                ? a.getKey().compareTo(b.getKey()) : Long.compare(b.getValue(), a.getValue()));
+
+        StringBuilder out = new StringBuilder();
+        out.append("Configuration reads: ").append(total).append(" of ").append(counts.size()).append(" keys\n");
+        out.append("Most read keys:\n");
+        for (int i = 0; i < Math.min(top, counts.size()); i++) {
+            out.append(String.format("  %12d  %s%n", counts.get(i).getValue(), counts.get(i).getKey()));
+        }
+
+        List<String> unused = new ArrayList<>();
+        for (String key : snapshot.byPrefix("", false).keySet()) {
+            if (!reads.containsKey(key)) {
+                unused.add(key);
+            }
+        }
+        out.append("Defined but never read (").append(unused.size()).append("):\n");
+        for (String key : unused) {
+            out.append("  ").append(key).append('\n');
+        }
+
+        out.append("Sampled lookup latency (1 in ").append(SAMPLE_RATE).append("):\n");
+        for (int i = 0; i < latency.length; i++) {
+            long count = latency[i].sum();
+            if (count > 0) {
+                out.append(String.format("  %10d - %10d ns  %d%n", 1L << i, (1L << (i + 1)) - 1, count));
+            }
+        }
+        return out.toString();
+    }
+}
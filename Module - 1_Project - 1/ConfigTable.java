@@ -0,0 +1,87 @@
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+// Immutable string-to-string hash map built once per load. Keys, values and
+// hashes sit in flat parallel arrays probed linearly, at most half full, so a
+// lookup is a few array reads with no locks, no nodes and no boxing. Every
+// value is parsed into its typed forms while the table is built, so a typed
+// read parses nothing.
+final class ConfigTable {
+
+    private final String[] keys;
+    private final String[] values;
+    private final ConfigValue[] typed;
+    private final int[] hashes;
+    private final int mask;
+    private final int size;
+
+    ConfigTable(Map<String, String> entries) {
+        this(entries.keySet().toArray(new String[0]), entries.values().toArray(new String[0]));
+    }
+
+    // entryKeys must be distinct; entryValues[i] is the value of entryKeys[i]
+    ConfigTable(String[] entryKeys, String[] entryValues) {
+        int capacity = Integer.highestOneBit(Math.max(2, entryKeys.length) * 2 - 1) << 1;
+        keys = new String[capacity];
+        values = new String[capacity];
+        typed = new ConfigValue[capacity];
+        hashes = new int[capacity];
+        mask = capacity - 1;
+        size = entryKeys.length;
+
+        for (int i = 0; i < entryKeys.length; i++) {
+            int hash = entryKeys[i].hashCode();
+            int slot = spread(hash) & mask;
+            while (keys[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = entryKeys[i];
+            values[slot] = entryValues[i];
+            typed[slot] = new ConfigValue(entryValues[i]);
+            hashes[slot] = hash;
+        }
+    }
+
+    String get(String key) {
+        int slot = slotOf(key);
+        return slot >= 0 ? values[slot] : null;
+    }
+
+    // Returns the parsed forms of a value, or null if the key is not set
+    ConfigValue getTyped(String key) {
+        int slot = slotOf(key);
+        return slot >= 0 ? typed[slot] : null;
+    }
+
+    private int slotOf(String key) {
+        int hash = key.hashCode();
+        int slot = spread(hash) & mask;
+        String candidate;
+        while ((candidate = keys[slot]) != null) {
+            if (hashes[slot] == hash && candidate.equals(key)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    int size() {
+        return size;
+    }
+
+    // Calls action for every entry, in no particular order
+    void forEach(BiConsumer<String, String> action) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null) {
+                action.accept(keys[i], values[i]);
+            }
+        }
+    }
+
+    // A table of a few dozen keys picks slots with the lowest few bits only; folding in the upper half
+    // of the hash keeps keys whose hashes differ only above the mask from sharing a probe run
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
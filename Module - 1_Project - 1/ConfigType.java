@@ -0,0 +1,9 @@
+// Types a configuration key can be declared as with ConfigurationManager.require
+public enum ConfigType {
+    STRING,
+    INT,
+    LONG,
+    BOOLEAN,
+    DURATION, // "250ms", "30s", "5m", "2h", "1d", an ISO-8601 duration such as "PT30S", or plain milliseconds
+    LIST      // Comma-separated, with blanks around each element trimmed
+}
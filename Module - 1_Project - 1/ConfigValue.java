@@ -0,0 +1,185 @@
+import java.time.Duration;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+// A configuration value parsed once, when its snapshot is built, into every
+// type it is valid as. Typed getters then only check a flag and return the
+// cached form.
+final class ConfigValue {
+
+    private final String raw;
+
+    // One bit per ConfigType this value has been successfully read as by a typed getter, so that a
+    // reload can refuse a replacement that would make the same read fail. Unsynchronized: a bit lost
+    // to a race only leaves one type unchecked, and it is set again by the next read.
+    private int readAs;
+
+    private final boolean isLong;
+    private final long longValue;
+
+    // Boolean.TRUE, Boolean.FALSE or null when the value is not a boolean
+    private final Boolean booleanValue;
+
+    // Null when the value is not a duration
+    private final Duration duration;
+
+    private final List<String> list;
+
+    ConfigValue(String raw) {
+        this.raw = raw;
+        String value = raw.trim();
+
+        long parsed = 0;
+        boolean numeric;
+        try {
+            parsed = Long.parseLong(value);
+            numeric = true;
+        } catch (NumberFormatException ex) {
+            numeric = false;
+        }
+        this.isLong = numeric;
+        this.longValue = parsed;
+
+        this.booleanValue = parseBoolean(value);
+        this.duration = numeric ? Duration.ofMillis(parsed) : parseDuration(value);
+        this.list = parseList(raw);
+    }
+
+    String raw() {
+        return raw;
+    }
+
+    // Returns the bits of the types this value has been read as
+    int readAs() {
+        return readAs;
+    }
+
+    // Adds the types the value this one replaces was read as; called before the snapshot is published
+    void inheritReadAs(int types) {
+        readAs |= types;
+    }
+
+    // Returns null if the value is valid as type, or a description of the problem
+    String check(ConfigType type) {
+        switch (type) {
+            case INT:
+                return isLong && longValue == (int) longValue ? null : "not an int: '" + raw + "'";
+            case LONG:
+                return isLong ? null : "not a long: '" + raw + "'";
+            case BOOLEAN:
+                return booleanValue != null ? null : "not a boolean: '" + raw + "'";
+            case DURATION:
+                return duration != null ? null : "not a duration: '" + raw + "'";
+            default:
+                return null;
+        }
+    }
+
+    int asInt() {
+        require(ConfigType.INT);
+        return (int) longValue;
+    }
+
+    long asLong() {
+        require(ConfigType.LONG);
+        return longValue;
+    }
+
+    boolean asBoolean() {
+        require(ConfigType.BOOLEAN);
+        return booleanValue;
+    }
+
+    Duration asDuration() {
+        require(ConfigType.DURATION);
+        return duration;
+    }
+
+    List<String> asList() {
+        return list;
+    }
+
+    private void require(ConfigType type) {
+        String problem = check(type);
+        if (problem != null) {
+            throw new IllegalArgumentException(problem);
+        }
+        int bit = 1 << type.ordinal();
+        if ((readAs & bit) == 0) {
+            readAs |= bit;
+        }
+    }
+
+    private static Boolean parseBoolean(String value) {
+        switch (value.toLowerCase(Locale.ROOT)) {
+            case "true":
+            case "yes":
+            case "on":
+                return Boolean.TRUE;
+            case "false":
+            case "no":
+            case "off":
+                return Boolean.FALSE;
+            default:
+                return null;
+        }
+    }
+
+    private static Duration parseDuration(String value) {
+        if (value.isEmpty()) {
+            return null;
+        }
+        if (value.charAt(0) == 'P' || value.charAt(0) == 'p') {
+            try {
+                return Duration.parse(value);
+            } catch (DateTimeParseException ex) {
+                return null;
+            }
+        }
+
+        int unitStart = 0;
+        while (unitStart < value.length() && Character.isDigit(value.charAt(unitStart))) {
+            unitStart++;
+        }
+        if (unitStart == 0 || unitStart > 18) {
+            return null;
+        }
+        long amount = Long.parseLong(value.substring(0, unitStart));
+        try {
+            switch (value.substring(unitStart).trim().toLowerCase(Locale.ROOT)) {
+                case "ms":
+                    return Duration.ofMillis(amount);
+                case "s":
+                    return Duration.ofSeconds(amount);
+                case "m":
+                    return Duration.ofMinutes(amount);
+                case "h":
+                    return Duration.ofHours(amount);
+                case "d":
+                    return Duration.ofDays(amount);
+                default:
+                    return null;
+            }
+        } catch (ArithmeticException ex) {
+            // Every value is tried as a duration, so an out-of-range one (e.g. an id ending in "d") is simply not one
+            return null;
+        }
+    }
+
+    private static List<String> parseList(String value) {
+        if (value.trim().isEmpty()) {
+            return Collections.emptyList();
+        }
+        if (value.indexOf(',') < 0) {
+            return Collections.singletonList(value.trim());
+        }
+        List<String> elements = new ArrayList<>();
+        for (String element : value.split(",")) {
+            elements.add(element.trim());
+        }
+        return Collections.unmodifiableList(elements);
+    }
+}
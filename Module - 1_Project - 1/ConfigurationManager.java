@@ -1,24 +1,44 @@
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class ConfigurationManager {
 
-    private static ConfigurationManager instance;
-    private Properties properties;
+    private static volatile ConfigurationManager instance;
+
+    // Current configuration; replaced as a whole by a single reference swap on reload
+    private volatile ConfigSnapshot snapshot;
+
+    // Keys declared with require(), checked against every snapshot before it is published
+    private final Map<String, ConfigType> schema = new ConcurrentHashMap<>();
+
+    // Subscribers to changes, notified on their own thread after each reload
+    private final ConfigNotifier notifier = new ConfigNotifier();
+
+    // Read counters and lookup latency, or null while instrumentation is off
+    private volatile ConfigStats stats;
+
+    // Classpath defaults, external file, environment and system properties, merged on every load
+    private final ConfigSources sources;
 
     // Private constructor to prevent instantiation
     private ConfigurationManager() {
-        properties = new Properties();
-        try (InputStream input = getClass().getClassLoader().getResourceAsStream("config.properties")) {
-            if (input == null) {
-                System.out.println("Sorry, unable to find config.properties");
-                return;
+        sources = new ConfigSources(getClass().getClassLoader());
+        snapshot = loadInitial();
+
+        // Watch the files so that changes are picked up without a restart
+        for (Path file : sources.watchedFiles()) {
+            try {
+                ConfigReloader.start(file, this::reload);
+            } catch (IOException ex) {
+                ex.printStackTrace();
             }
-            // Load the properties file from the classpath
-            properties.load(input);
-        } catch (IOException ex) {
-            ex.printStackTrace();
         }
     }
 
@@ -34,9 +54,161 @@ public class ConfigurationManager {
         return instance;
     }
 
-    // Method to get a property by key
+    // Method to get a property by key; never blocks, even while a reload is in progress
     public String getProperty(String key) {
-        return properties.getProperty(key);
+        ConfigStats recorder = stats;
+        return recorder == null ? snapshot.get(key) : recorder.lookup(snapshot, key);
+    }
+
+    // Returns the properties whose key starts with prefix, e.g. "db." or "cache.regions.", sorted by key
+    public Map<String, String> getByPrefix(String prefix) {
+        return snapshot.byPrefix(prefix, false);
+    }
+
+    // Returns the properties under namespace with the namespace removed from their keys, sorted by key;
+    // subtree("db") of db.host and db.port is {host, port}
+    public Map<String, String> subtree(String namespace) {
+        String prefix = namespace.isEmpty() || namespace.endsWith(".") ? namespace : namespace + ".";
+        return snapshot.byPrefix(prefix, true);
+    }
+
+    // Declares that key must be present and valid as type. The current configuration is checked
+    // immediately, and a reload that breaks the declaration is rejected instead of published.
+    public void require(String key, ConfigType type) {
+        List<String> problems = snapshot.validate(Map.of(key, type));
+        if (!problems.isEmpty()) {
+            throw new IllegalStateException("Invalid configuration: " + problems.get(0));
+        }
+        schema.put(key, type);
+    }
+
+    // Typed getters return the forms parsed when the snapshot was built; they throw
+    // NoSuchElementException if the key is not set and IllegalArgumentException if
+    // its value is not of the requested type. Once a value has been read as a type,
+    // a reload that makes it invalid as that type is rejected, as for require().
+    public int getInt(String key) {
+        return typed(key).asInt();
+    }
+
+    public int getInt(String key, int defaultValue) {
+        ConfigValue value = getTyped(key);
+        return value != null ? value.asInt() : defaultValue;
+    }
+
+    public long getLong(String key) {
+        return typed(key).asLong();
+    }
+
+    public long getLong(String key, long defaultValue) {
+        ConfigValue value = getTyped(key);
+        return value != null ? value.asLong() : defaultValue;
+    }
+
+    public boolean getBoolean(String key) {
+        return typed(key).asBoolean();
+    }
+
+    public boolean getBoolean(String key, boolean defaultValue) {
+        ConfigValue value = getTyped(key);
+        return value != null ? value.asBoolean() : defaultValue;
+    }
+
+    public Duration getDuration(String key) {
+        return typed(key).asDuration();
+    }
+
+    public Duration getDuration(String key, Duration defaultValue) {
+        ConfigValue value = getTyped(key);
+        return value != null ? value.asDuration() : defaultValue;
+    }
+
+    // Comma-separated elements, trimmed; the list is unmodifiable
+    public List<String> getList(String key) {
+        ConfigValue value = getTyped(key);
+        return value != null ? value.asList() : Collections.emptyList();
+    }
+
+    private ConfigValue getTyped(String key) {
+        ConfigStats recorder = stats;
+        if (recorder != null) {
+            recorder.count(key);
+        }
+        return snapshot.getTyped(key);
+    }
+
+    private ConfigValue typed(String key) {
+        ConfigValue value = getTyped(key);
+        if (value == null) {
+            throw new NoSuchElementException("Missing configuration key: " + key);
+        }
+        return value;
+    }
+
+    // Calls listener with the keys starting with prefix that changed, once per reload that changed any.
+    // Listeners run on a dedicated thread; batches from reloads that arrive before a listener has
+    // finished are merged. An empty prefix subscribes to every key.
+    public void subscribe(String prefix, ConfigListener listener) {
+        notifier.subscribe(prefix, listener);
+    }
+
+    public void unsubscribe(ConfigListener listener) {
+        notifier.unsubscribe(listener);
+    }
+
+    // Starts counting reads per key and sampling lookup latency; off by default, and
+    // while off the only cost in getProperty is one volatile read
+    public void enableStatistics() {
+        if (stats == null) {
+            synchronized (this) {
+                if (stats == null) {
+                    stats = new ConfigStats();
+                }
+            }
+        }
+    }
+
+    // Describes the top most read keys, the keys that were never read since statistics were
+    // enabled, and the sampled lookup latency
+    public String dumpStatistics(int top) {
+        ConfigStats recorder = stats;
+        return recorder == null ? "Statistics are not enabled\n" : recorder.report(snapshot, top);
+    }
+
+    // Returns a copy of the current configuration, for code written against java.util.Properties;
+    // lookups on the copy go through a synchronized Hashtable, so hot paths should use getProperty
+    public Properties getProperties() {
+        return snapshot.toProperties();
+    }
+
+    // Reads and merges every source again and publishes the result; on failure the previous snapshot stays.
+    // Synchronized because every watched file has its own watcher thread.
+    public synchronized void reload() {
+        try {
+            ConfigSnapshot loaded = new ConfigSnapshot(sources.load());
+
+            // Report bad values now rather than when a caller next reads them
+            List<String> problems = loaded.validate(schema);
+            problems.addAll(loaded.checkReads(snapshot, schema));
+            if (!problems.isEmpty()) {
+                System.out.println("Keeping previous configuration, invalid values: " + problems);
+                return;
+            }
+            ConfigSnapshot previous = snapshot;
+            snapshot = loaded;
+            notifier.publish(previous.diff(loaded));
+            System.out.println("Reloaded configuration from " + sources.watchedFiles());
+        } catch (IOException | RuntimeException ex) {
+            System.out.println("Keeping previous configuration, unable to reload: " + ex);
+        }
+    }
+
+    private ConfigSnapshot loadInitial() {
+        try {
+            return new ConfigSnapshot(sources.load());
+        } catch (IOException | RuntimeException ex) {
+            ex.printStackTrace();
+            return ConfigSnapshot.EMPTY;
+        }
     }
 
     public static void main(String[] args) {
@@ -47,5 +219,13 @@ public class ConfigurationManager {
 
         System.out.println("Database Host: " + dbHost);
         System.out.println("Database Port: " + dbPort);
+
+        if (dbPort != null) {
+            try {
+                System.out.println("Database Port (int): " + configManager.getInt("db.port"));
+            } catch (IllegalArgumentException ex) {
+                System.out.println("Database Port is not a number: " + dbPort);
+            }
+        }
     }
 }
@@ -0,0 +1,44 @@
+// One entry of an approximate top-K result. The true count of the word lies in
+// [count - error, count]; the word is guaranteed to belong in the top K when
+// even its lower bound beats the estimated count of the first word left out.
+public final class HeavyHitter {
+
+    private final String word;
+    private final long count;
+    private final long error;
+    private final boolean guaranteed;
+
+    HeavyHitter(String word, long count, long error, boolean guaranteed) {
+        this.word = word;
+        this.count = count;
+        this.error = error;
+        this.guaranteed = guaranteed;
+    }
+
+    public String getWord() {
+        return word;
+    }
+
+    // Estimated count; never below the true count
+    public long getCount() {
+        return count;
+    }
+
+    // Maximum amount by which the estimate may exceed the true count
+    public long getError() {
+        return error;
+    }
+
+    public long getLowerBound() {
+        return count - error;
+    }
+
+    public boolean isGuaranteed() {
+        return guaranteed;
+    }
+
+    @Override
+    public String toString() {
+        return word + ": " + count + (error > 0 ? " (+/- " + error + ")" : "");
+    }
+}
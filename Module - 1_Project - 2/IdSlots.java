@@ -0,0 +1,96 @@
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+// Pieces shared by the tables that index dense ids by hash (WordCounts,
+// NGramCounts, SpaceSaving). Their slot tables hold id + 1, zero meaning
+// empty, are a power of two long and are probed linearly from spread(hash).
+final class IdSlots {
+
+    private IdSlots() {
+    }
+
+    // Mixes the high bits into the low bits used to pick a slot
+    static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    // Returns the first empty slot on the probe path of hash
+    static int emptySlot(int[] slots, int hash) {
+        int mask = slots.length - 1;
+        int slot = spread(hash) & mask;
+        while (slots[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    // Returns a slot table twice as long holding ids [0, size), where hashes[id] is the hash of id;
+    // only the slots are rebuilt, the ids and whatever they index stay where they are
+    static int[] doubled(int[] slots, int[] hashes, int size) {
+        int[] grown = new int[slots.length * 2];
+        for (int id = 0; id < size; id++) {
+            grown[emptySlot(grown, hashes[id])] = id + 1;
+        }
+        return grown;
+    }
+
+    // Read-only Map view over ids [0, size()), iterated in id order; keys are built as they are visited
+    abstract static class CountMap extends AbstractMap<String, Integer> {
+
+        // Returns the id of key, or -1 if it is not in the table
+        abstract int find(String key);
+
+        abstract String key(int id);
+
+        abstract int count(int id);
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof String && find((String) key) >= 0;
+        }
+
+        @Override
+        public Integer get(Object key) {
+            if (!(key instanceof String)) {
+                return null;
+            }
+            int id = find((String) key);
+            return id >= 0 ? count(id) : null;
+        }
+
+        @Override
+        public Set<Map.Entry<String, Integer>> entrySet() {
+            return new AbstractSet<Map.Entry<String, Integer>>() {
+                @Override
+                public int size() {
+                    return CountMap.this.size();
+                }
+
+                @Override
+                public Iterator<Map.Entry<String, Integer>> iterator() {
+                    return new Iterator<Map.Entry<String, Integer>>() {
+                        private int next;
+
+                        @Override
+                        public boolean hasNext() {
+                            return next < size();
+                        }
+
+                        @Override
+                        public Map.Entry<String, Integer> next() {
+                            if (next >= size()) {
+                                throw new NoSuchElementException();
+                            }
+                            int id = next++;
+                            return new AbstractMap.SimpleImmutableEntry<>(key(id), count(id));
+                        }
+                    };
+                }
+            };
+        }
+    }
+}
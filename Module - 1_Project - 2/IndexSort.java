@@ -0,0 +1,111 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Parallel, stable merge sort of a primitive int index array under a comparator
+// on the indexes, so records kept in parallel arrays can be ordered without
+// boxing an Integer per record
+final class IndexSort {
+
+    // Ranges at or below this size are sorted on the calling thread
+    private static final int SEQUENTIAL_THRESHOLD = 8 * 1024;
+    private static final int INSERTION_THRESHOLD = 24;
+
+    // Compares two indexes
+    interface IntComparator {
+        int compare(int a, int b);
+    }
+
+    private IndexSort() {
+    }
+
+    // Returns 0..n-1 sorted by the comparator
+    static int[] sortedIndexes(int n, IntComparator comparator) {
+        int[] indexes = new int[n];
+        for (int i = 0; i < n; i++) {
+            indexes[i] = i;
+        }
+        sort(indexes, comparator);
+        return indexes;
+    }
+
+    static void sort(int[] indexes, IntComparator comparator) {
+        int[] buffer = new int[indexes.length];
+        if (indexes.length <= SEQUENTIAL_THRESHOLD) {
+            mergeSort(indexes, buffer, 0, indexes.length, comparator);
+        } else {
+            ForkJoinPool.commonPool().invoke(new SortTask(indexes, buffer, 0, indexes.length, comparator));
+        }
+    }
+
+    private static void mergeSort(int[] a, int[] buffer, int from, int to, IntComparator comparator) {
+        if (to - from <= INSERTION_THRESHOLD) {
+            insertionSort(a, from, to, comparator);
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        mergeSort(a, buffer, from, middle, comparator);
+        mergeSort(a, buffer, middle, to, comparator);
+        merge(a, buffer, from, middle, to, comparator);
+    }
+
+    private static void insertionSort(int[] a, int from, int to, IntComparator comparator) {
+        for (int i = from + 1; i < to; i++) {
+            int value = a[i];
+            int j = i - 1;
+            while (j >= from && comparator.compare(a[j], value) > 0) {
+                a[j + 1] = a[j];
+                j--;
+            }
+            a[j + 1] = value;
+        }
+    }
+
+    // Merges the sorted runs [from, middle) and [middle, to) of a
+    private static void merge(int[] a, int[] buffer, int from, int middle, int to, IntComparator comparator) {
+        if (comparator.compare(a[middle - 1], a[middle]) <= 0) {
+            return; // Already in order
+        }
+        System.arraycopy(a, from, buffer, from, to - from);
+        int i = from;
+        int j = middle;
+        int k = from;
+        while (i < middle && j < to) {
+            a[k++] = comparator.compare(buffer[j], buffer[i]) < 0 ? buffer[j++] : buffer[i++];
+        }
+        while (i < middle) {
+            a[k++] = buffer[i++];
+        }
+        while (j < to) {
+            a[k++] = buffer[j++];
+        }
+    }
+
+    @SuppressWarnings("serial") // Fork-join tasks are never serialized
+    private static class SortTask extends RecursiveAction {
+        private final int[] a;
+        private final int[] buffer;
+        private final int from;
+        private final int to;
+        private final IntComparator comparator;
+
+        SortTask(int[] a, int[] buffer, int from, int to, IntComparator comparator) {
+            this.a = a;
+            this.buffer = buffer;
+            this.from = from;
+            this.to = to;
+            this.comparator = comparator;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SEQUENTIAL_THRESHOLD) {
+                mergeSort(a, buffer, from, to, comparator);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new SortTask(a, buffer, from, middle, comparator),
+                    new SortTask(a, buffer, middle, to, comparator));
+            merge(a, buffer, from, middle, to, comparator);
+        }
+    }
+}
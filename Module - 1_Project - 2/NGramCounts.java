@@ -0,0 +1,188 @@
+import java.util.Arrays;
+import java.util.Map;
+
+// Counts n-grams of consecutive words without building a String per n-gram.
+// Each word is interned to a dense id by a WordCounts table; an n-gram is the
+// tuple of its n word ids, stored in one int arena. A polynomial hash over the
+// last n ids is rolled forward as each word arrives: the oldest id's term is
+// subtracted and the new id's term is added, so hashing costs O(1) per word.
+final class NGramCounts implements WordSink {
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int BASE = 0x01000193;
+
+    private final int n;
+    private final WordCounts words = new WordCounts();
+
+    // The last n word ids, as a ring indexed by position % n
+    private final int[] window;
+    private long position;
+    private int rollingHash;
+
+    // BASE^(n - 1), the weight of the oldest id in the rolling hash
+    private final int oldestWeight;
+
+    // Slot table of n-gram id + 1, zero meaning empty; kept at most half full
+    private int[] slots;
+    private int mask;
+
+    // Per-n-gram columns, indexed by n-gram id; the word ids of n-gram g are grams[g * n, g * n + n)
+    private int[] grams;
+    private int[] hashes;
+    private int[] counts;
+    private int size;
+
+    NGramCounts(int n) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("n must be positive: " + n);
+        }
+        this.n = n;
+        window = new int[n];
+        int weight = 1;
+        for (int i = 1; i < n; i++) {
+            weight *= BASE;
+        }
+        oldestWeight = weight;
+
+        slots = new int[INITIAL_CAPACITY];
+        mask = INITIAL_CAPACITY - 1;
+        grams = new int[INITIAL_CAPACITY / 2 * n];
+        hashes = new int[INITIAL_CAPACITY / 2];
+        counts = new int[INITIAL_CAPACITY / 2];
+    }
+
+    @Override
+    public void accept(char[] chars, int length, int hash) {
+        int id = words.add(chars, 0, length, hash, 1);
+        int ring = (int) (position % n);
+        if (position >= n) {
+            rollingHash -= mix(window[ring]) * oldestWeight;
+        }
+        rollingHash = rollingHash * BASE + mix(id);
+        window[ring] = id;
+        position++;
+
+        if (position >= n) {
+            add(rollingHash);
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    // Read-only Map view keyed by the n-gram's words joined with single spaces
+    Map<String, Integer> asMap() {
+        return new IdSlots.CountMap() {
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            int find(String key) {
+                return indexOf(key.split(" ", -1));
+            }
+
+            @Override
+            String key(int gram) {
+                return NGramCounts.this.key(gram);
+            }
+
+            @Override
+            int count(int gram) {
+                return counts[gram];
+            }
+        };
+    }
+
+    // Counts the n-gram currently held in the window
+    private void add(int hash) {
+        int start = (int) (position % n); // Oldest id of the window
+        int slot = IdSlots.spread(hash) & mask;
+        int gram;
+        while ((gram = slots[slot] - 1) >= 0) {
+            if (hashes[gram] == hash && matchesWindow(gram, start)) {
+                counts[gram]++;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        gram = size;
+        if (gram == counts.length) {
+            int capacity = counts.length * 2;
+            grams = Arrays.copyOf(grams, capacity * n);
+            hashes = Arrays.copyOf(hashes, capacity);
+            counts = Arrays.copyOf(counts, capacity);
+        }
+        for (int i = 0; i < n; i++) {
+            grams[gram * n + i] = window[(start + i) % n];
+        }
+        hashes[gram] = hash;
+        counts[gram] = 1;
+        slots[slot] = gram + 1;
+
+        if (++size * 2 > slots.length) {
+            rehash();
+        }
+    }
+
+    private boolean matchesWindow(int gram, int start) {
+        int base = gram * n;
+        for (int i = 0; i < n; i++) {
+            if (grams[base + i] != window[(start + i) % n]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Finds an n-gram by its words, or returns -1
+    private int indexOf(String[] parts) {
+        if (parts.length != n) {
+            return -1;
+        }
+        int[] ids = new int[n];
+        int hash = 0;
+        for (int i = 0; i < n; i++) {
+            ids[i] = words.indexOf(parts[i]);
+            if (ids[i] < 0) {
+                return -1;
+            }
+            hash = hash * BASE + mix(ids[i]);
+        }
+
+        int slot = IdSlots.spread(hash) & mask;
+        int gram;
+        while ((gram = slots[slot] - 1) >= 0) {
+            if (hashes[gram] == hash && Arrays.equals(grams, gram * n, gram * n + n, ids, 0, n)) {
+                return gram;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private String key(int gram) {
+        StringBuilder key = new StringBuilder();
+        for (int i = 0; i < n; i++) {
+            if (i > 0) {
+                key.append(' ');
+            }
+            key.append(words.word(grams[gram * n + i]));
+        }
+        return key.toString();
+    }
+
+    // Doubles the slot table; n-grams themselves never move
+    private void rehash() {
+        slots = IdSlots.doubled(slots, hashes, size);
+        mask = slots.length - 1;
+    }
+
+    // Word ids are small and sequential; scatter them before they enter the polynomial
+    private static int mix(int id) {
+        return (id + 1) * 0x9E3779B9;
+    }
+}
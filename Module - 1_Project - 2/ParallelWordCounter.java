@@ -0,0 +1,176 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Counts words of a large file or a directory of files on a fork-join pool
+public class ParallelWordCounter {
+
+    // Target number of bytes each worker counts on its own
+    private static final long DEFAULT_CHUNK_SIZE = 16L * 1024 * 1024;
+
+    // Bytes read at a time while looking for a word boundary
+    private static final int BOUNDARY_SCAN_SIZE = 4 * 1024;
+
+    private final ForkJoinPool pool;
+    private final long chunkSize;
+
+    public ParallelWordCounter() {
+        this(ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+    }
+
+    public ParallelWordCounter(ForkJoinPool pool, long chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+        }
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+    }
+
+    // Method to count word occurrences in a file, or in every regular file under a directory
+    public Map<String, Integer> countWords(Path path) throws IOException {
+        List<Path> files;
+        if (Files.isDirectory(path)) {
+            try (Stream<Path> walk = Files.walk(path)) {
+                files = walk.filter(Files::isRegularFile).collect(Collectors.toList());
+            }
+        } else {
+            files = List.of(path);
+        }
+
+        // Each file is open only while it is split and, later, while one of its chunks is counted,
+        // so the number of open files stays at about the pool's parallelism however many there are
+        List<Chunk> chunks = new ArrayList<>();
+        for (Path file : files) {
+            split(file, chunks);
+        }
+        if (chunks.isEmpty()) {
+            return new WordCounts().asMap();
+        }
+        try {
+            return pool.invoke(new CountTask(chunks, 0, chunks.size())).asMap();
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    // Cuts a file into chunks of about chunkSize bytes, moving each cut forward to a word boundary
+    private void split(Path file, List<Chunk> chunks) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long start = 0;
+            while (start < size) {
+                long end = start + chunkSize < size ? nextBoundary(channel, start + chunkSize, size) : size;
+                chunks.add(new Chunk(file, start, end));
+                start = end;
+            }
+        }
+    }
+
+    // Finds the first ASCII non-word byte at or after position; in UTF-8 it can never be
+    // part of a multi-byte character, so both the word and the character end there
+    private static long nextBoundary(FileChannel channel, long position, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(BOUNDARY_SCAN_SIZE);
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                byte b = buffer.get(i);
+                if (b >= 0 && !WordCounter.isWordChar((char) b)) {
+                    return position + i;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    // A byte range of one file
+    private static class Chunk {
+        final Path file;
+        final long start;
+        final long end;
+
+        Chunk(Path file, long start, long end) {
+            this.file = file;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    // Counts a single chunk into a worker-local table, or splits the chunk list and merges the halves
+    @SuppressWarnings("serial") // Fork-join tasks are never serialized
+    private static class CountTask extends RecursiveTask<WordCounts> {
+        private final List<Chunk> chunks;
+        private final int from;
+        private final int to;
+
+        CountTask(List<Chunk> chunks, int from, int to) {
+            this.chunks = chunks;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected WordCounts compute() {
+            if (to - from == 1) {
+                Chunk chunk = chunks.get(from);
+                WordCounts counts = new WordCounts();
+                try (FileChannel channel = FileChannel.open(chunk.file, StandardOpenOption.READ)) {
+                    WordCounter.countRange(channel, chunk.start, chunk.end, counts);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+                return counts;
+            }
+
+            int middle = (from + to) >>> 1;
+            CountTask left = new CountTask(chunks, from, middle);
+            left.fork();
+            WordCounts right = new CountTask(chunks, middle, to).compute();
+            return merge(left.join(), right);
+        }
+
+        // Adds the smaller table into the larger one
+        private static WordCounts merge(WordCounts a, WordCounts b) {
+            if (a.size() < b.size()) {
+                WordCounts swap = a;
+                a = b;
+                b = swap;
+            }
+            a.addAll(b);
+            return a;
+        }
+    }
+
+    // Main method: counts the file or directory given on the command line
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Usage: java ParallelWordCounter <file-or-directory>");
+            return;
+        }
+
+        Map<String, Integer> result = new ParallelWordCounter().countWords(Paths.get(args[0]));
+
+        if (result.isEmpty()) {
+            System.out.println("No words found in the input.");
+        } else {
+            System.out.println("Word Occurrences:");
+            new WordCountWriter(WordCountWriter.Order.COUNT, WordCountWriter.Format.TEXT).write(result, System.out);
+        }
+    }
+}
@@ -0,0 +1,191 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+// Immutable binary file of (word, count) entries sorted by word. Counts may be
+// negative, so a segment can also hold the difference between two versions of
+// a file. Segments are merged by summing the counts of equal words.
+//
+// Layout: int magic, int version, then per entry a word and a long count, then an
+// empty word and the long number of entries as a trailer. A word is an int byte
+// length followed by its UTF-8 bytes. Version 1 stored words with writeUTF, which
+// fails on words over 65,535 bytes; those segments can still be read.
+final class Segment {
+
+    private static final int MAGIC = 0x57435347; // "WCSG"
+    private static final int VERSION = 2;
+    private static final int UTF_VERSION = 1;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private Segment() {
+    }
+
+    // Writes the non-zero counts of a table, sorted by word
+    static void write(Path path, WordCounts counts) throws IOException {
+        String[] words = new String[counts.size()];
+        Integer[] order = new Integer[counts.size()];
+        for (int id = 0; id < words.length; id++) {
+            words[id] = counts.word(id);
+            order[id] = id;
+        }
+        Arrays.sort(order, (a, b) -> words[a].compareTo(words[b]));
+
+        try (Writer writer = new Writer(path)) {
+            for (int id : order) {
+                writer.write(words[id], counts.count(id));
+            }
+        }
+    }
+
+    // Merges sorted segments into one, summing equal words and dropping words whose sum is zero
+    static void merge(List<Path> inputs, Path output) throws IOException {
+        List<Reader> readers = new ArrayList<>();
+        PriorityQueue<Reader> queue = new PriorityQueue<>((a, b) -> a.word().compareTo(b.word()));
+        try (Writer writer = new Writer(output)) {
+            for (Path input : inputs) {
+                Reader reader = new Reader(input);
+                readers.add(reader);
+                if (reader.next()) {
+                    queue.add(reader);
+                }
+            }
+
+            while (!queue.isEmpty()) {
+                String word = queue.peek().word();
+                long sum = 0;
+                while (!queue.isEmpty() && queue.peek().word().equals(word)) {
+                    Reader reader = queue.poll();
+                    sum += reader.count();
+                    if (reader.next()) {
+                        queue.add(reader);
+                    }
+                }
+                writer.write(word, sum);
+            }
+        } finally {
+            for (Reader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    // Adds sign times every count of a segment to a table. Segments store long counts but the
+    // table holds ints, so a count or sum that does not fit throws ArithmeticException rather than wrapping.
+    static void readInto(Path path, WordCounts counts, int sign) throws IOException {
+        try (Reader reader = new Reader(path)) {
+            while (reader.next()) {
+                counts.addExact(reader.word(), Math.toIntExact(sign * reader.count()));
+            }
+        }
+    }
+
+    // Appends entries, which must arrive in word order; zero counts are skipped
+    static final class Writer implements Closeable {
+        private final DataOutputStream out;
+        private String last;
+        private long entries;
+
+        Writer(Path path) throws IOException {
+            out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), BUFFER_SIZE));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+        }
+
+        void write(String word, long count) throws IOException {
+            if (last != null && last.compareTo(word) >= 0) {
+                throw new IllegalStateException("Segment entries out of order: " + last + ", " + word);
+            }
+            last = word;
+            if (count != 0) {
+                writeWord(word);
+                out.writeLong(count);
+                entries++;
+            }
+        }
+
+        private void writeWord(String word) throws IOException {
+            byte[] bytes = word.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                writeWord("");
+                out.writeLong(entries);
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    // Reads entries one at a time, in word order
+    static final class Reader implements Closeable {
+        private final Path path;
+        private final DataInputStream in;
+        private final int version;
+        private String word;
+        private long count;
+        private long entries;
+
+        Reader(Path path) throws IOException {
+            this.path = path;
+            in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE));
+            int magic = in.readInt();
+            version = in.readInt();
+            if (magic != MAGIC || (version != VERSION && version != UTF_VERSION)) {
+                in.close();
+                throw new IOException("Not a word count segment: " + path);
+            }
+        }
+
+        // Moves to the next entry; returns false at the end of the segment
+        boolean next() throws IOException {
+            String next = version == UTF_VERSION ? in.readUTF() : readWord();
+            if (next.isEmpty()) {
+                if (in.readLong() != entries) {
+                    throw new IOException("Truncated word count segment: " + path);
+                }
+                return false;
+            }
+            word = next;
+            count = in.readLong();
+            entries++;
+            return true;
+        }
+
+        private String readWord() throws IOException {
+            int length = in.readInt();
+            if (length < 0) {
+                throw new IOException("Corrupt word count segment: " + path);
+            }
+            byte[] bytes = new byte[length];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        String word() {
+            return word;
+        }
+
+        long count() {
+            return count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
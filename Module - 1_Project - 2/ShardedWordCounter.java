@@ -0,0 +1,171 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Counts words with several worker JVMs on the same machine, for vocabularies
+// too large for one heap. Words are hash-partitioned: every worker scans the
+// shared input files but only keeps the words of its own partition, then
+// writes them as a sorted segment file. The coordinator merges the sorted
+// segments; the partitions are disjoint, so the merge is a streaming k-way merge.
+public class ShardedWordCounter {
+
+    private final int shards;
+    private final List<String> jvmOptions;
+
+    public ShardedWordCounter(int shards, List<String> jvmOptions) {
+        if (shards <= 0) {
+            throw new IllegalArgumentException("Number of shards must be positive: " + shards);
+        }
+        this.shards = shards;
+        this.jvmOptions = jvmOptions;
+    }
+
+    // Counts a file, or every regular file under a directory, into one sorted segment at output
+    public void countWords(Path input, Path output) throws IOException, InterruptedException {
+        Path workDir = Files.createTempDirectory("wordcount-shards-");
+        List<Process> workers = new ArrayList<>();
+        try {
+            // The input list is shared with every worker through a file rather than the command line
+            Path inputList = workDir.resolve("inputs.txt");
+            Files.write(inputList, listFiles(input), StandardCharsets.UTF_8);
+
+            String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+            List<Path> segments = new ArrayList<>();
+            for (int shard = 0; shard < shards; shard++) {
+                Path segment = workDir.resolve("shard-" + shard + ".wcs");
+                segments.add(segment);
+
+                List<String> command = new ArrayList<>();
+                command.add(java);
+                command.addAll(jvmOptions);
+                command.add("-cp");
+                command.add(System.getProperty("java.class.path"));
+                command.add(ShardedWordCounter.class.getName());
+                command.add("--worker");
+                command.add(Integer.toString(shard));
+                command.add(Integer.toString(shards));
+                command.add(inputList.toString());
+                command.add(segment.toString());
+                workers.add(new ProcessBuilder(command).inheritIO().start());
+            }
+
+            for (int shard = 0; shard < shards; shard++) {
+                int exitCode = workers.get(shard).waitFor();
+                if (exitCode != 0) {
+                    throw new IOException("Word count worker " + shard + " of " + shards
+                            + " failed with exit code " + exitCode);
+                }
+            }
+
+            Segment.merge(segments, output);
+        } finally {
+            // On failure or interruption the remaining workers would keep writing into workDir
+            destroy(workers);
+            try (Stream<Path> walk = Files.walk(workDir)) {
+                for (Path path : walk.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                    Files.deleteIfExists(path);
+                }
+            }
+        }
+    }
+
+    // Kills the workers still running and waits until every one has exited
+    private static void destroy(List<Process> workers) {
+        boolean interrupted = false;
+        for (Process worker : workers) {
+            worker.destroyForcibly();
+            while (true) {
+                try {
+                    worker.waitFor();
+                    break;
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static List<String> listFiles(Path input) throws IOException {
+        if (!Files.isDirectory(input)) {
+            return List.of(input.toAbsolutePath().toString());
+        }
+        try (Stream<Path> walk = Files.walk(input)) {
+            return walk.filter(Files::isRegularFile)
+                    .map(path -> path.toAbsolutePath().toString())
+                    .collect(Collectors.toList());
+        }
+    }
+
+    // Partition of a word, from the String hash computed by the scanner
+    static int shardOf(int hash, int shards) {
+        return Math.floorMod(hash * 0x9E3779B9, shards);
+    }
+
+    // Worker side: counts the words of one partition and writes them as a sorted segment
+    private static void runWorker(int shard, int shards, Path inputList, Path output) throws IOException {
+        WordCounts counts = new WordCounts();
+        WordSink partition = (chars, length, hash) -> {
+            if (shardOf(hash, shards) == shard) {
+                counts.add(chars, 0, length, hash, 1);
+            }
+        };
+
+        for (String name : Files.readAllLines(inputList, StandardCharsets.UTF_8)) {
+            try (FileChannel channel = FileChannel.open(Paths.get(name), StandardOpenOption.READ)) {
+                WordCounter.countRange(channel, 0, channel.size(), partition);
+            }
+        }
+        Segment.write(output, counts);
+    }
+
+    // Prints a merged result segment as "word: count" lines, in word order
+    static void print(Path segment) throws IOException {
+        BufferedWriter writer =
+                new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 20);
+        try (Segment.Reader reader = new Segment.Reader(segment)) {
+            while (reader.next()) {
+                writer.write(reader.word());
+                writer.write(": ");
+                writer.write(Long.toString(reader.count()));
+                writer.write('\n');
+            }
+        }
+        writer.flush();
+    }
+
+    // Main method: java ShardedWordCounter <shards> <file-or-directory> [output-segment]
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length == 5 && args[0].equals("--worker")) {
+            runWorker(Integer.parseInt(args[1]), Integer.parseInt(args[2]), Paths.get(args[3]), Paths.get(args[4]));
+            return;
+        }
+        if (args.length < 2) {
+            System.out.println("Usage: java ShardedWordCounter <shards> <file-or-directory> [output-segment]");
+            return;
+        }
+
+        int shards = Integer.parseInt(args[0]);
+        Path output = args.length > 2 ? Paths.get(args[2]) : Files.createTempFile("wordcount-", ".wcs");
+        new ShardedWordCounter(shards, List.of()).countWords(Paths.get(args[1]), output);
+        if (args.length > 2) {
+            System.out.println("Wrote merged counts to " + output);
+        } else {
+            print(output);
+            Files.delete(output);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Space-Saving heavy-hitters summary (Metwally et al.) with a fixed number of
+// counters. A word that is already monitored has its counter incremented; an
+// unmonitored word takes over the smallest counter and inherits its count as
+// its error. Every estimate overshoots the true count by at most total / capacity.
+final class SpaceSaving implements WordSink {
+
+    private final int capacity;
+
+    // Monitored words and their counters, indexed by counter number
+    private final String[] words;
+    private final int[] hashes;
+    private final long[] counts;
+    private final long[] errors;
+    private int size;
+    private long total;
+
+    // Min-heap of counter numbers ordered by count, and each counter's heap position
+    private final int[] heap;
+    private final int[] heapIndex;
+
+    // Linear-probing index of counter number + 1 by word, zero meaning empty
+    private final int[] slots;
+    private final int mask;
+
+    SpaceSaving(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        words = new String[capacity];
+        hashes = new int[capacity];
+        counts = new long[capacity];
+        errors = new long[capacity];
+        heap = new int[capacity];
+        heapIndex = new int[capacity];
+        slots = new int[Integer.highestOneBit(capacity * 2 - 1) << 1];
+        mask = slots.length - 1;
+    }
+
+    @Override
+    public void accept(char[] chars, int length, int hash) {
+        total++;
+
+        int slot = IdSlots.spread(hash) & mask;
+        int counter;
+        while ((counter = slots[slot] - 1) >= 0) {
+            if (hashes[counter] == hash && matches(words[counter], chars, length)) {
+                counts[counter]++;
+                siftDown(heapIndex[counter]);
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        if (size < capacity) {
+            counter = size++;
+            heap[counter] = counter;
+            heapIndex[counter] = counter;
+            monitor(counter, slot, chars, length, hash, 0);
+            siftUp(counter);
+        } else {
+            // Evict the smallest counter; the new word may have occurred up to that many times unseen
+            counter = heap[0];
+            remove(counter);
+            monitor(counter, IdSlots.emptySlot(slots, hash), chars, length, hash, counts[counter]);
+            siftDown(0);
+        }
+    }
+
+    // Number of words seen so far
+    long total() {
+        return total;
+    }
+
+    // Largest possible overestimate of any count in this summary
+    long errorBound() {
+        return size < capacity ? 0 : total / capacity;
+    }
+
+    // Returns up to k words with the highest estimated counts, highest first
+    List<HeavyHitter> top(int k) {
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(counts[b], counts[a]));
+
+        int n = Math.min(k, size);
+        long firstLeftOut = n < size ? counts[order[n]] : 0;
+        List<HeavyHitter> result = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            int counter = order[i];
+            long lowerBound = counts[counter] - errors[counter];
+            result.add(new HeavyHitter(words[counter], counts[counter], errors[counter], lowerBound >= firstLeftOut));
+        }
+        return result;
+    }
+
+    private void monitor(int counter, int slot, char[] chars, int length, int hash, long error) {
+        words[counter] = new String(chars, 0, length);
+        hashes[counter] = hash;
+        counts[counter] = error + 1;
+        errors[counter] = error;
+        slots[slot] = counter + 1;
+    }
+
+    // Deletes a counter from the index, shifting later entries of its probe run back
+    private void remove(int counter) {
+        int slot = IdSlots.spread(hashes[counter]) & mask;
+        while (slots[slot] != counter + 1) {
+            slot = (slot + 1) & mask;
+        }
+
+        int next = slot;
+        while (true) {
+            next = (next + 1) & mask;
+            int moved = slots[next] - 1;
+            if (moved < 0) {
+                break;
+            }
+            int home = IdSlots.spread(hashes[moved]) & mask;
+            // The entry may fill the hole only if its home slot is not between the hole and its position
+            if (((next - home) & mask) >= ((next - slot) & mask)) {
+                slots[slot] = moved + 1;
+                slot = next;
+            }
+        }
+        slots[slot] = 0;
+    }
+
+    private void siftUp(int index) {
+        int counter = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (counts[heap[parent]] <= counts[counter]) {
+                break;
+            }
+            place(heap[parent], index);
+            index = parent;
+        }
+        place(counter, index);
+    }
+
+    private void siftDown(int index) {
+        int counter = heap[index];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && counts[heap[child + 1]] < counts[heap[child]]) {
+                child++;
+            }
+            if (counts[heap[child]] >= counts[counter]) {
+                break;
+            }
+            place(heap[child], index);
+            index = child;
+        }
+        place(counter, index);
+    }
+
+    private void place(int counter, int index) {
+        heap[index] = counter;
+        heapIndex[counter] = index;
+    }
+
+    private static boolean matches(String word, char[] chars, int length) {
+        if (word.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (word.charAt(i) != chars[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
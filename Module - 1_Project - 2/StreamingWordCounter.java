@@ -0,0 +1,168 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+// Keeps word counts for a sliding (or tumbling) time window over an unbounded
+// stream of lines. The window is cut into panes of one slide each; every pane
+// has its own table, and a running total is kept for the whole window. When
+// the window moves, only the expired pane is subtracted from the total.
+public class StreamingWordCounter {
+
+    private final long slideMillis;
+    private final WordCounts[] panes;
+
+    // Counts for every pane in the window; words whose count fell to zero stay until the next rebuild
+    private WordCounts totals = new WordCounts();
+    private int zeroWords;
+
+    // Index (time / slide) of the pane that new lines are counted into, or -1 before the first line
+    private long currentPane = -1;
+
+    private final WordScanner scanner = new WordScanner(this::count);
+
+    // A tumbling window: panes do not overlap
+    public StreamingWordCounter(long windowMillis) {
+        this(windowMillis, windowMillis);
+    }
+
+    public StreamingWordCounter(long windowMillis, long slideMillis) {
+        if (slideMillis <= 0 || windowMillis < slideMillis || windowMillis % slideMillis != 0) {
+            throw new IllegalArgumentException(
+                    "Window must be a positive multiple of the slide: " + windowMillis + "/" + slideMillis);
+        }
+        this.slideMillis = slideMillis;
+        this.panes = new WordCounts[(int) (windowMillis / slideMillis)];
+        for (int i = 0; i < panes.length; i++) {
+            panes[i] = new WordCounts();
+        }
+    }
+
+    // Counts a line received now
+    public void accept(String line) {
+        accept(line, System.currentTimeMillis());
+    }
+
+    // Counts a line received at the given time; times must not go backwards
+    public void accept(String line, long timeMillis) {
+        advanceTo(timeMillis);
+        scanner.scan(line);
+        scanner.finish();
+    }
+
+    // Moves the window so that it ends at the given time, expiring panes that fell out of it;
+    // returns true if the window moved
+    public boolean advanceTo(long timeMillis) {
+        long pane = timeMillis / slideMillis;
+        if (currentPane < 0) {
+            currentPane = pane;
+            return false;
+        }
+        if (pane <= currentPane) {
+            return false;
+        }
+
+        if (pane - currentPane >= panes.length) {
+            // Nothing from the current window survives
+            for (int i = 0; i < panes.length; i++) {
+                panes[i] = new WordCounts();
+            }
+            totals = new WordCounts();
+            zeroWords = 0;
+        } else {
+            while (currentPane < pane) {
+                int slot = (int) ((currentPane + 1) % panes.length);
+                zeroWords += totals.subtractAll(panes[slot]);
+                panes[slot] = new WordCounts();
+                currentPane++;
+            }
+            if (zeroWords * 2 > totals.size()) {
+                rebuildTotals();
+            }
+        }
+        currentPane = pane;
+        return true;
+    }
+
+    // Returns true if a line at the given time would close the current pane
+    public boolean closesPane(long timeMillis) {
+        return currentPane >= 0 && timeMillis / slideMillis > currentPane;
+    }
+
+    // Returns a copy of the counts in the current window
+    public Map<String, Integer> snapshot() {
+        Map<String, Integer> result = new HashMap<>();
+        for (int id = 0; id < totals.size(); id++) {
+            if (totals.count(id) > 0) {
+                result.put(totals.word(id), totals.count(id));
+            }
+        }
+        return result;
+    }
+
+    // Returns the n most frequent words of the current window, highest first
+    public List<Map.Entry<String, Integer>> top(int n) {
+        PriorityQueue<Integer> heap =
+                new PriorityQueue<>(n + 1, (a, b) -> Integer.compare(totals.count(a), totals.count(b)));
+        for (int id = 0; id < totals.size(); id++) {
+            if (totals.count(id) > 0) {
+                heap.add(id);
+                if (heap.size() > n) {
+                    heap.poll();
+                }
+            }
+        }
+
+        List<Map.Entry<String, Integer>> result = new ArrayList<>(heap.size());
+        while (!heap.isEmpty()) {
+            int id = heap.poll();
+            result.add(0, Map.entry(totals.word(id), totals.count(id)));
+        }
+        return result;
+    }
+
+    private void count(char[] chars, int length, int hash) {
+        panes[(int) (currentPane % panes.length)].add(chars, length, hash, 1);
+
+        int before = totals.size();
+        int id = totals.add(chars, length, hash, 1);
+        if (totals.size() == before && totals.count(id) == 1) {
+            zeroWords--; // A word that had left the window came back
+        }
+    }
+
+    // Drops the words that no longer occur in the window by summing the live panes again
+    private void rebuildTotals() {
+        WordCounts rebuilt = new WordCounts();
+        for (WordCounts pane : panes) {
+            rebuilt.addAll(pane);
+        }
+        totals = rebuilt;
+        zeroWords = 0;
+    }
+
+    // Main method: counts lines from standard input and prints the top words each time the window slides
+    public static void main(String[] args) throws IOException {
+        long windowSeconds = args.length > 0 ? Long.parseLong(args[0]) : 60;
+        long slideSeconds = args.length > 1 ? Long.parseLong(args[1]) : windowSeconds;
+        StreamingWordCounter counter = new StreamingWordCounter(windowSeconds * 1000, slideSeconds * 1000);
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            long now = System.currentTimeMillis();
+            if (counter.closesPane(now)) {
+                System.out.println("Top words in the last " + windowSeconds + "s:");
+                for (Map.Entry<String, Integer> entry : counter.top(10)) {
+                    System.out.println(entry.getKey() + ": " + entry.getValue());
+                }
+            }
+            counter.accept(line, now);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+// Regression checks for inputs the benchmark corpora never contain. Prints every
+// failed check and exits with status 1 if there was one.
+//
+// Usage: java WordCountChecks
+public class WordCountChecks {
+
+    // Longer than the 65,535 bytes that DataOutputStream.writeUTF can write
+    private static final String LONG_WORD = "a".repeat(70_000);
+
+    private static int failures;
+
+    public static void main(String[] args) throws IOException {
+        segmentHoldsLongWord();
+        indexCountsLongWord();
+        indexSkipsItsOwnFiles();
+        binaryOutputHoldsLongWord();
+
+        if (failures > 0) {
+            System.out.println(failures + " check(s) failed.");
+            System.exit(1);
+        }
+        System.out.println("All checks passed.");
+    }
+
+    private static void segmentHoldsLongWord() throws IOException {
+        WordCounts counts = new WordCounts();
+        counts.add(LONG_WORD, 3);
+        counts.add("b", 1);
+        Path file = Files.createTempFile("segment-", ".wcs");
+        try {
+            Segment.write(file, counts);
+            WordCounts read = new WordCounts();
+            Segment.readInto(file, read, 1);
+            check("segment round trip of a 70,000-character word", read.asMap().equals(counts.asMap()));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static void indexCountsLongWord() throws IOException {
+        Path corpus = Files.createTempDirectory("corpus-");
+        try {
+            Files.write(corpus.resolve("long.txt"), (LONG_WORD + " b").getBytes(StandardCharsets.UTF_8));
+            WordCountIndex index = new WordCountIndex(corpus, corpus.resolve("index"));
+            index.update();
+            Map<String, Integer> counts = index.counts();
+            check("index counts a 70,000-character word",
+                    counts.size() == 2 && counts.get(LONG_WORD) == 1 && counts.get("b") == 1);
+        } finally {
+            delete(corpus);
+        }
+    }
+
+    // The index directory inside the corpus, named once relative to the working directory and once
+    // with ".." in it, must not be counted as part of the corpus
+    private static void indexSkipsItsOwnFiles() throws IOException {
+        Path corpus = Files.createTempDirectory("corpus-");
+        try {
+            Files.write(corpus.resolve("words.txt"), "one two two".getBytes(StandardCharsets.UTF_8));
+            Files.createDirectory(corpus.resolve("sub"));
+            Path relative = Paths.get("").toAbsolutePath().relativize(corpus);
+            Path[][] layouts = {
+                {relative, corpus.resolve("index")},
+                {corpus, relative.resolve("sub").resolve("..").resolve("index")},
+            };
+            for (Path[] layout : layouts) {
+                WordCountIndex index = new WordCountIndex(layout[0], layout[1]);
+                index.update();
+                index.update();
+                Map<String, Integer> counts = index.counts();
+                check("index skips its own files (corpus " + layout[0] + ", index " + layout[1] + ")",
+                        counts.size() == 2 && counts.get("one") == 1 && counts.get("two") == 2);
+            }
+        } finally {
+            delete(corpus);
+        }
+    }
+
+    private static void binaryOutputHoldsLongWord() throws IOException {
+        Map<String, Integer> counts = new HashMap<>();
+        counts.put(LONG_WORD, 3);
+        counts.put("b", 1);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new WordCountWriter(WordCountWriter.Order.COUNT, WordCountWriter.Format.BINARY).write(counts, out);
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+        in.readInt();
+        Map<String, Integer> read = new HashMap<>();
+        for (int n = in.readInt(); n > 0; n--) {
+            byte[] word = new byte[in.readInt()];
+            in.readFully(word);
+            read.put(new String(word, StandardCharsets.UTF_8), in.readInt());
+        }
+        check("binary output of a 70,000-character word", read.equals(counts) && in.read() == -1);
+    }
+
+    private static void check(String name, boolean passed) {
+        if (!passed) {
+            System.out.println("FAILED: " + name);
+            failures++;
+        }
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> walk = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) walk.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,294 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Persistent word counts for a corpus directory, kept as immutable sorted
+// segment files. Every source file has its own segment, and the corpus total is
+// the sum of a small stack of delta segments. An update recounts only the files
+// whose size or modification time changed, writes one delta segment holding
+// (new counts - old counts), and merges segments level by level like an LSM tree.
+//
+// The manifest is a text file replaced atomically after every update:
+//   next  <number of the next segment>
+//   level <level> <segment>
+//   file  <size> <mtime> <segment> <path relative to the corpus>
+public class WordCountIndex {
+
+    private static final String MANIFEST = "manifest.txt";
+    private static final String SEGMENT_SUFFIX = ".wcs";
+
+    // Number of segments on one level that are merged into a single segment on the next
+    private static final int FANOUT = 4;
+
+    // Real paths, so that the index directory is recognized inside the corpus however either was given
+    private final Path corpus;
+    private final Path indexDir;
+
+    private final Map<String, FileEntry> files = new TreeMap<>();
+    private final List<LevelEntry> levels = new ArrayList<>();
+    private long nextSegment;
+
+    public WordCountIndex(Path corpus, Path indexDir) throws IOException {
+        Files.createDirectories(indexDir);
+        this.corpus = corpus.toRealPath();
+        this.indexDir = indexDir.toRealPath();
+        loadManifest();
+        deleteUnreferencedSegments();
+    }
+
+    // Recounts the files that were added or changed since the last update and
+    // drops the counts of deleted files; returns the number of files recounted
+    public int update() throws IOException {
+        WordCounts delta = new WordCounts();
+        List<String> obsolete = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        int recounted = 0;
+
+        List<Path> sources;
+        try (Stream<Path> walk = Files.walk(corpus)) {
+            // The index directory may live inside the corpus; its own files are not part of it
+            sources = walk.filter(Files::isRegularFile)
+                    .filter(path -> !path.startsWith(indexDir))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+
+        for (Path source : sources) {
+            String name = corpus.relativize(source).toString().replace('\\', '/');
+            long size = Files.size(source);
+            long mtime = Files.getLastModifiedTime(source).toMillis();
+            seen.add(name);
+
+            FileEntry old = files.get(name);
+            if (old != null && old.size == size && old.mtime == mtime) {
+                continue;
+            }
+
+            WordCounts fileCounts = new WordCounts();
+            try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+                WordCounter.countRange(channel, 0, channel.size(), fileCounts);
+            }
+            String segment = newSegment();
+            Segment.write(indexDir.resolve(segment), fileCounts);
+
+            if (old != null) {
+                Segment.readInto(indexDir.resolve(old.segment), delta, -1);
+                obsolete.add(old.segment);
+            }
+            delta.addAll(fileCounts);
+            files.put(name, new FileEntry(size, mtime, segment));
+            recounted++;
+        }
+
+        boolean deleted = false;
+        for (Iterator<Map.Entry<String, FileEntry>> it = files.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, FileEntry> entry = it.next();
+            if (!seen.contains(entry.getKey())) {
+                Segment.readInto(indexDir.resolve(entry.getValue().segment), delta, -1);
+                obsolete.add(entry.getValue().segment);
+                it.remove();
+                deleted = true;
+            }
+        }
+
+        if (recounted > 0 || deleted) {
+            String segment = newSegment();
+            Segment.write(indexDir.resolve(segment), delta);
+            levels.add(new LevelEntry(0, segment));
+            compact(obsolete);
+            writeManifest();
+            for (String name : obsolete) {
+                Files.deleteIfExists(indexDir.resolve(name));
+            }
+        }
+        return recounted;
+    }
+
+    // Returns the word counts of the whole corpus as of the last update
+    public Map<String, Integer> counts() throws IOException {
+        WordCounts total = new WordCounts();
+        for (LevelEntry entry : levels) {
+            Segment.readInto(indexDir.resolve(entry.segment), total, 1);
+        }
+
+        // Deltas from different segments can cancel out
+        WordCounts live = new WordCounts();
+        for (int id = 0; id < total.size(); id++) {
+            if (total.count(id) != 0) {
+                live.add(total.word(id), total.count(id));
+            }
+        }
+        return live.asMap();
+    }
+
+    // Merges every delta segment into one, leaving a single sorted segment of corpus totals
+    public Path compactAll() throws IOException {
+        if (levels.size() > 1) {
+            List<String> obsolete = new ArrayList<>();
+            List<Path> inputs = new ArrayList<>();
+            int top = 0;
+            for (LevelEntry entry : levels) {
+                inputs.add(indexDir.resolve(entry.segment));
+                obsolete.add(entry.segment);
+                top = Math.max(top, entry.level);
+            }
+            String segment = newSegment();
+            Segment.merge(inputs, indexDir.resolve(segment));
+            levels.clear();
+            levels.add(new LevelEntry(top + 1, segment));
+            writeManifest();
+            for (String name : obsolete) {
+                Files.deleteIfExists(indexDir.resolve(name));
+            }
+        }
+        return levels.isEmpty() ? null : indexDir.resolve(levels.get(0).segment);
+    }
+
+    // Merges FANOUT segments of one level into one segment of the next, from the bottom up
+    private void compact(List<String> obsolete) throws IOException {
+        for (int level = 0; ; level++) {
+            List<LevelEntry> run = new ArrayList<>();
+            boolean deeper = false;
+            for (LevelEntry entry : levels) {
+                if (entry.level == level) {
+                    run.add(entry);
+                } else if (entry.level > level) {
+                    deeper = true;
+                }
+            }
+            if (run.size() >= FANOUT) {
+                List<Path> inputs = new ArrayList<>();
+                for (LevelEntry entry : run) {
+                    inputs.add(indexDir.resolve(entry.segment));
+                    obsolete.add(entry.segment);
+                }
+                String segment = newSegment();
+                Segment.merge(inputs, indexDir.resolve(segment));
+                levels.removeAll(run);
+                levels.add(new LevelEntry(level + 1, segment));
+                deeper = true;
+            }
+            if (!deeper) {
+                return;
+            }
+        }
+    }
+
+    private String newSegment() {
+        return "seg-" + (nextSegment++) + SEGMENT_SUFFIX;
+    }
+
+    private void loadManifest() throws IOException {
+        Path manifest = indexDir.resolve(MANIFEST);
+        if (!Files.exists(manifest)) {
+            return;
+        }
+        for (String line : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+            String[] fields = line.split("\t", 5);
+            switch (fields[0]) {
+                case "next":
+                    nextSegment = Long.parseLong(fields[1]);
+                    break;
+                case "level":
+                    levels.add(new LevelEntry(Integer.parseInt(fields[1]), fields[2]));
+                    break;
+                case "file":
+                    long size = Long.parseLong(fields[1]);
+                    long mtime = Long.parseLong(fields[2]);
+                    files.put(fields[4], new FileEntry(size, mtime, fields[3]));
+                    break;
+                default:
+                    throw new IOException("Unknown manifest entry in " + manifest + ": " + line);
+            }
+        }
+    }
+
+    // Writes the manifest to a temporary file and renames it over the old one
+    private void writeManifest() throws IOException {
+        Path temp = indexDir.resolve(MANIFEST + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            writer.write("next\t" + nextSegment + "\n");
+            for (LevelEntry entry : levels) {
+                writer.write("level\t" + entry.level + "\t" + entry.segment + "\n");
+            }
+            for (Map.Entry<String, FileEntry> entry : files.entrySet()) {
+                FileEntry file = entry.getValue();
+                writer.write("file\t" + file.size + "\t" + file.mtime + "\t" + file.segment
+                        + "\t" + entry.getKey() + "\n");
+            }
+        }
+        Files.move(temp, indexDir.resolve(MANIFEST),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // Removes segments left behind by an update that stopped before its manifest was written
+    private void deleteUnreferencedSegments() throws IOException {
+        Set<String> referenced = new HashSet<>();
+        for (LevelEntry entry : levels) {
+            referenced.add(entry.segment);
+        }
+        for (FileEntry entry : files.values()) {
+            referenced.add(entry.segment);
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(indexDir, "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                if (!referenced.contains(path.getFileName().toString())) {
+                    Files.delete(path);
+                }
+            }
+        }
+    }
+
+    // Size and modification time of a source file when it was counted, and its segment
+    private static class FileEntry {
+        final long size;
+        final long mtime;
+        final String segment;
+
+        FileEntry(long size, long mtime, String segment) {
+            this.size = size;
+            this.mtime = mtime;
+            this.segment = segment;
+        }
+    }
+
+    // A delta segment and the level it was merged to
+    private static class LevelEntry {
+        final int level;
+        final String segment;
+
+        LevelEntry(int level, String segment) {
+            this.level = level;
+            this.segment = segment;
+        }
+    }
+
+    // Main method: updates the index of a corpus directory and reports what was recounted
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: java WordCountIndex <corpus-directory> <index-directory>");
+            return;
+        }
+
+        WordCountIndex index = new WordCountIndex(Paths.get(args[0]), Paths.get(args[1]));
+        int recounted = index.update();
+        System.out.println("Recounted " + recounted + " of " + index.files.size() + " files.");
+        System.out.println("Distinct words: " + index.counts().size());
+    }
+}
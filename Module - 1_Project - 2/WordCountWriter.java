@@ -0,0 +1,112 @@
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+// Sorts word counts and writes them in one pass through a large buffer.
+// Words and counts are copied into parallel arrays once; only an int index
+// array is sorted, in parallel, and nothing is flushed until the end.
+public class WordCountWriter {
+
+    private static final int BUFFER_SIZE = 1024 * 1024;
+    private static final int BINARY_MAGIC = 0x57435232; // "WCR2"; "WCRT" files held modified-UTF-8 words
+
+    public enum Order {
+        COUNT,        // Highest count first, ties alphabetical
+        ALPHABETICAL,
+        NONE          // The order the map iterates in
+    }
+
+    public enum Format {
+        TEXT,   // "word: count" lines, as printed by WordCounter
+        CSV,    // "word,count" with a header line
+        TSV,    // "word<TAB>count" with a header line
+        BINARY  // int magic, int entries, then per entry an int byte length, the UTF-8 word and an int count
+    }
+
+    private final Order order;
+    private final Format format;
+
+    public WordCountWriter(Order order, Format format) {
+        this.order = order;
+        this.format = format;
+    }
+
+    // Writes the counts to out and flushes it once; out is not closed
+    public void write(Map<String, Integer> wordCount, OutputStream out) throws IOException {
+        String[] words = new String[wordCount.size()];
+        int[] counts = new int[words.length];
+        int n = 0;
+        for (Map.Entry<String, Integer> entry : wordCount.entrySet()) {
+            words[n] = entry.getKey();
+            counts[n] = entry.getValue();
+            n++;
+        }
+
+        int[] indexes;
+        switch (order) {
+            case COUNT:
+                indexes = IndexSort.sortedIndexes(n, (a, b) -> {
+                    int byCount = Integer.compare(counts[b], counts[a]);
+                    return byCount != 0 ? byCount : words[a].compareTo(words[b]);
+                });
+                break;
+            case ALPHABETICAL:
+                indexes = IndexSort.sortedIndexes(n, (a, b) -> words[a].compareTo(words[b]));
+                break;
+            default:
+                indexes = new int[n];
+                for (int i = 0; i < n; i++) {
+                    indexes[i] = i;
+                }
+                break;
+        }
+
+        if (format == Format.BINARY) {
+            DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, BUFFER_SIZE));
+            data.writeInt(BINARY_MAGIC);
+            data.writeInt(n);
+            for (int index : indexes) {
+                // Not writeUTF, which cannot write a word longer than 65,535 bytes
+                byte[] word = words[index].getBytes(StandardCharsets.UTF_8);
+                data.writeInt(word.length);
+                data.write(word);
+                data.writeInt(counts[index]);
+            }
+            data.flush();
+            return;
+        }
+
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+        char separator;
+        switch (format) {
+            case CSV:
+                separator = ',';
+                writer.write("word,count\n");
+                break;
+            case TSV:
+                separator = '\t';
+                writer.write("word\tcount\n");
+                break;
+            default:
+                separator = ':';
+                break;
+        }
+        for (int index : indexes) {
+            // Words are [a-z0-9_] only, so CSV needs no quoting
+            writer.write(words[index]);
+            writer.write(separator);
+            if (format == Format.TEXT) {
+                writer.write(' ');
+            }
+            writer.write(Integer.toString(counts[index]));
+            writer.write('\n');
+        }
+        writer.flush();
+    }
+}
@@ -1,46 +1,303 @@
-import java.util.HashMap;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Scanner;
 
 public class WordCounter {
 
+    // Size of each memory-mapped window when reading a file
+    private static final long MAP_WINDOW_SIZE = 64L * 1024 * 1024;
+
+    // Size of the direct buffer used when reading from a channel
+    private static final int BYTE_BUFFER_SIZE = 64 * 1024;
+
+    // Size of the buffer that decoded characters are tokenized from
+    private static final int CHAR_BUFFER_SIZE = 16 * 1024;
+
+    // Smallest number of counters used by topK when no capacity is given
+    private static final int MIN_TOP_K_CAPACITY = 1024;
+
+    // HyperLogLog precision used by distinctWords when none is given: 4 KB, about 1.6% error
+    private static final int DEFAULT_DISTINCT_PRECISION = 12;
+
     // Method to count word occurrences in a given text
     public Map<String, Integer> countWords(String text) {
-        Map<String, Integer> wordCount = new HashMap<>();
+        WordCounts counts = new WordCounts();
 
         if (text == null || text.isEmpty()) {
-            return wordCount; // Return empty map if the text is null or empty
+            return counts.asMap(); // Return empty map if the text is null or empty
+        }
+
+        // Lowercase and split on non-word characters in one pass, without copying the text
+        WordScanner scanner = new WordScanner(counts);
+        scanner.scan(text);
+        scanner.finish();
+
+        return counts.asMap();
+    }
+
+    // Method to count word occurrences in a UTF-8 file, one mapped window at a time
+    public Map<String, Integer> countWords(Path path) throws IOException {
+        WordCounts counts = new WordCounts();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            countRange(channel, 0, channel.size(), counts);
         }
+        return counts.asMap();
+    }
+
+    // Scans the words in bytes [start, end) of a file; the range must begin and end on word boundaries
+    static void countRange(FileChannel channel, long start, long end, WordSink sink) throws IOException {
+        CharsetDecoder decoder = newDecoder();
+        CharBuffer chars = CharBuffer.allocate(CHAR_BUFFER_SIZE);
+        WordScanner scanner = new WordScanner(sink);
+        long position = start;
+        boolean endOfInput = false;
 
-        // Split the text into words, using non-word characters as delimiters
-        String[] words = text.toLowerCase().split("\\W+");
+        while (!endOfInput) {
+            long length = Math.min(MAP_WINDOW_SIZE, end - position);
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            endOfInput = position + length == end;
+            decode(decoder, window, chars, endOfInput, scanner);
 
-        for (String word : words) {
-            wordCount.put(word, wordCount.getOrDefault(word, 0) + 1);
+            // A character cut by the window edge is left unconsumed and re-read by the next window
+            position += window.position();
         }
 
-        return wordCount;
+        finish(decoder, chars, scanner);
     }
 
-    // Main method for user interaction
-    public static void main(String[] args) {
-        WordCounter wordCounter = new WordCounter();
-        Scanner scanner = new Scanner(System.in);
+    // Method to count word occurrences in UTF-8 bytes read from a channel
+    public Map<String, Integer> countWords(ReadableByteChannel channel) throws IOException {
+        WordCounts counts = new WordCounts();
+        CharsetDecoder decoder = newDecoder();
+        ByteBuffer bytes = ByteBuffer.allocateDirect(BYTE_BUFFER_SIZE);
+        CharBuffer chars = CharBuffer.allocate(CHAR_BUFFER_SIZE);
+        WordScanner scanner = new WordScanner(counts);
 
-        System.out.println("Enter a text to count word occurrences:");
-        String text = scanner.nextLine();
+        while (channel.read(bytes) != -1) {
+            bytes.flip();
+            decode(decoder, bytes, chars, false, scanner);
+            bytes.compact(); // Keep the bytes of a partially read character
+        }
+        bytes.flip();
+        decode(decoder, bytes, chars, true, scanner);
+
+        finish(decoder, chars, scanner);
+        return counts.asMap();
+    }
+
+    // Method to count sequences of n consecutive words, keyed by the words joined with spaces
+    public Map<String, Integer> countNGrams(String text, int n) {
+        NGramCounts grams = new NGramCounts(n);
+        if (text != null) {
+            WordScanner scanner = new WordScanner(grams);
+            scanner.scan(text);
+            scanner.finish();
+        }
+        return grams.asMap();
+    }
+
+    // Method to count sequences of n consecutive words in a UTF-8 file
+    public Map<String, Integer> countNGrams(Path path, int n) throws IOException {
+        NGramCounts grams = new NGramCounts(n);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            countRange(channel, 0, channel.size(), grams);
+        }
+        return grams.asMap();
+    }
+
+    // Method to estimate the number of distinct words; the returned sketch can be merged with others
+    public HyperLogLog distinctWords(String text) {
+        return distinctWords(text, DEFAULT_DISTINCT_PRECISION);
+    }
+
+    public HyperLogLog distinctWords(String text, int precision) {
+        HyperLogLog sketch = new HyperLogLog(precision);
+        if (text != null) {
+            WordScanner scanner = new WordScanner(sketch);
+            scanner.scan(text);
+            scanner.finish();
+        }
+        return sketch;
+    }
+
+    // Method to estimate the number of distinct words in a UTF-8 file
+    public HyperLogLog distinctWords(Path path) throws IOException {
+        return distinctWords(path, DEFAULT_DISTINCT_PRECISION);
+    }
+
+    public HyperLogLog distinctWords(Path path, int precision) throws IOException {
+        HyperLogLog sketch = new HyperLogLog(precision);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            countRange(channel, 0, channel.size(), sketch);
+        }
+        return sketch;
+    }
+
+    // Method to find the k most frequent words using a fixed number of counters
+    public List<HeavyHitter> topK(String text, int k) {
+        return topK(text, k, defaultCapacity(k));
+    }
+
+    // Finds the k most frequent words with capacity counters; memory does not grow with the vocabulary
+    public List<HeavyHitter> topK(String text, int k, int capacity) {
+        SpaceSaving summary = new SpaceSaving(Math.max(k, capacity));
+        if (text != null) {
+            WordScanner scanner = new WordScanner(summary);
+            scanner.scan(text);
+            scanner.finish();
+        }
+        return summary.top(k);
+    }
+
+    // Method to find the k most frequent words of a UTF-8 file using a fixed number of counters
+    public List<HeavyHitter> topK(Path path, int k) throws IOException {
+        return topK(path, k, defaultCapacity(k));
+    }
+
+    public List<HeavyHitter> topK(Path path, int k, int capacity) throws IOException {
+        SpaceSaving summary = new SpaceSaving(Math.max(k, capacity));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            countRange(channel, 0, channel.size(), summary);
+        }
+        return summary.top(k);
+    }
+
+    // Ten counters per reported word keeps the error bound small for skewed text
+    private static int defaultCapacity(int k) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("k must be positive: " + k);
+        }
+        return Math.max(MIN_TOP_K_CAPACITY, 10 * k);
+    }
 
-        Map<String, Integer> result = wordCounter.countWords(text);
+    private static CharsetDecoder newDecoder() {
+        return StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    // Decodes as many bytes as possible, tokenizing each batch of characters as it fills
+    private static void decode(CharsetDecoder decoder, ByteBuffer bytes, CharBuffer chars, boolean endOfInput,
+                               WordScanner scanner) {
+        while (true) {
+            boolean overflow = decoder.decode(bytes, chars, endOfInput).isOverflow();
+            chars.flip();
+            scanner.scan(chars);
+            chars.clear();
+            if (!overflow) {
+                return;
+            }
+        }
+    }
 
+    // Flushes the decoder and counts the word left open at the end of the input
+    private static void finish(CharsetDecoder decoder, CharBuffer chars, WordScanner scanner) {
+        decoder.flush(chars);
+        chars.flip();
+        scanner.scan(chars);
+        chars.clear();
+        scanner.finish();
+    }
+
+    // Same character class as the regex \w: [a-zA-Z_0-9]
+    static boolean isWordChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+
+    // Prints the word occurrences, or a notice if there are none
+    private static void printResult(Map<String, Integer> result, WordCountWriter writer) throws IOException {
         if (result.isEmpty()) {
             System.out.println("No words found in the input.");
         } else {
             System.out.println("Word Occurrences:");
-            for (Map.Entry<String, Integer> entry : result.entrySet()) {
-                System.out.println(entry.getKey() + ": " + entry.getValue());
+            writer.write(result, System.out);
+        }
+    }
+
+    // Main method for user interaction
+    // Usage: java WordCounter [file] [--sort=count|alpha|none] [--format=text|csv|tsv|binary] [--shards=N]
+    public static void main(String[] args) throws IOException {
+        WordCounter wordCounter = new WordCounter();
+        // Null until given, so that options --shards cannot honour are detected
+        WordCountWriter.Order order = null;
+        WordCountWriter.Format format = null;
+        String file = null;
+        int shards = 0;
+
+        for (String arg : args) {
+            if (arg.startsWith("--sort=")) {
+                String value = arg.substring("--sort=".length());
+                order = value.equals("alpha") ? WordCountWriter.Order.ALPHABETICAL
+                        : WordCountWriter.Order.valueOf(value.toUpperCase(Locale.ROOT));
+            } else if (arg.startsWith("--shards=")) {
+                shards = Integer.parseInt(arg.substring("--shards=".length()));
+            } else if (arg.startsWith("--format=")) {
+                format = WordCountWriter.Format.valueOf(arg.substring("--format=".length()).toUpperCase(Locale.ROOT));
+            } else {
+                file = arg;
             }
         }
 
+        // Coordinator mode: split the vocabulary across worker JVMs. The merged result is streamed
+        // from disk in word order, as text; sorting it by count or reformatting it would mean
+        // holding the whole vocabulary in this JVM, which is what sharding avoids.
+        if (file != null && shards > 0) {
+            if (order == WordCountWriter.Order.COUNT
+                    || (format != null && format != WordCountWriter.Format.TEXT)) {
+                System.out.println("--shards prints the counts in word order as text;"
+                        + " it cannot be combined with --sort=count or a --format other than text.");
+                return;
+            }
+            Path merged = Files.createTempFile("wordcount-", ".wcs");
+            try {
+                new ShardedWordCounter(shards, List.of()).countWords(Paths.get(file), merged);
+                System.out.println("Word Occurrences:");
+                ShardedWordCounter.print(merged);
+            } catch (InterruptedException ex) {
+                System.out.println("Interrupted while waiting for the word count workers.");
+                Thread.currentThread().interrupt();
+            } finally {
+                Files.delete(merged);
+            }
+            return;
+        }
+
+        WordCountWriter writer = new WordCountWriter(order != null ? order : WordCountWriter.Order.COUNT,
+                format != null ? format : WordCountWriter.Format.TEXT);
+
+        // Count a file given on the command line without loading it into memory;
+        // machine-readable formats get the bare result
+        if (file != null) {
+            Map<String, Integer> result = wordCounter.countWords(Paths.get(file));
+            if (format == null || format == WordCountWriter.Format.TEXT) {
+                printResult(result, writer);
+            } else {
+                writer.write(result, System.out);
+            }
+            return;
+        }
+
+        Scanner scanner = new Scanner(System.in);
+
+        System.out.println("Enter a text to count word occurrences:");
+        String text = scanner.nextLine();
+
+        printResult(wordCounter.countWords(text), writer);
+
         scanner.close();
     }
 }
@@ -0,0 +1,191 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+// Benchmark harness for the word counting engines. Generates corpora that vary
+// in size, vocabulary skew (Zipfian or uniform) and line length, then reports
+// throughput, bytes allocated per input byte (summed over all threads) and the
+// scaling of the parallel engine across thread counts.
+//
+// Usage: java WordCounterBenchmark [corpus-MB] [measured-iterations]
+public class WordCounterBenchmark {
+
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int VOCABULARY_SIZE = 50_000;
+
+    // A benchmarked operation over one corpus
+    private interface Engine {
+        Object run(Corpus corpus) throws IOException;
+    }
+
+    // Generated text, both in memory and in a temporary file
+    private static class Corpus {
+        final String name;
+        final String text;
+        final Path file;
+        final long bytes;
+
+        Corpus(String name, String text, Path file) throws IOException {
+            this.name = name;
+            this.text = text;
+            this.file = file;
+            this.bytes = Files.size(file);
+        }
+    }
+
+    // Writes roughly sizeBytes of text whose words follow a Zipfian (s = 1) or uniform distribution
+    static Corpus generate(long sizeBytes, boolean zipfian, int wordsPerLine, long seed) throws IOException {
+        Random random = new Random(seed);
+        String[] vocabulary = new String[VOCABULARY_SIZE];
+        for (int i = 0; i < vocabulary.length; i++) {
+            vocabulary[i] = randomWord(random);
+        }
+
+        // Cumulative weights for sampling ranks by binary search
+        double[] cumulative = new double[vocabulary.length];
+        double sum = 0;
+        for (int i = 0; i < vocabulary.length; i++) {
+            sum += zipfian ? 1.0 / (i + 1) : 1.0;
+            cumulative[i] = sum;
+        }
+
+        StringBuilder text = new StringBuilder((int) sizeBytes + 64);
+        int wordsInLine = 0;
+        while (text.length() < sizeBytes) {
+            int index = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+            String word = vocabulary[index >= 0 ? index : Math.min(-index - 1, vocabulary.length - 1)];
+            text.append(random.nextInt(8) == 0 ? capitalize(word) : word);
+            if (++wordsInLine == wordsPerLine) {
+                text.append(".\n");
+                wordsInLine = 0;
+            } else {
+                text.append(random.nextInt(10) == 0 ? ", " : " ");
+            }
+        }
+
+        Path file = Files.createTempFile("wordcount-", ".txt");
+        file.toFile().deleteOnExit();
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.append(text);
+        }
+        String name = String.format("%s/%.1fMB/%dw-lines",
+                zipfian ? "zipf" : "uniform", sizeBytes / 1048576.0, wordsPerLine);
+        return new Corpus(name, text.toString(), file);
+    }
+
+    private static String randomWord(Random random) {
+        int length = 2 + random.nextInt(9);
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(chars);
+    }
+
+    private static String capitalize(String word) {
+        return Character.toUpperCase(word.charAt(0)) + word.substring(1);
+    }
+
+    // The original implementation, kept as a baseline for the tokenizer and map strategies
+    static Map<String, Integer> regexSplitBaseline(String text) {
+        Map<String, Integer> wordCount = new HashMap<>();
+        for (String word : text.toLowerCase().split("\\W+")) {
+            wordCount.put(word, wordCount.getOrDefault(word, 0) + 1);
+        }
+        return wordCount;
+    }
+
+    // Runs an engine through warmup and measured iterations and prints one result row
+    static void measure(String engineName, Engine engine, Corpus corpus, int iterations) throws IOException {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            sink(engine.run(corpus));
+        }
+
+        long bestNanos = Long.MAX_VALUE;
+        long totalNanos = 0;
+        long allocated = 0;
+        for (int i = 0; i < iterations; i++) {
+            long allocatedBefore = allocatedBytes();
+            long start = System.nanoTime();
+            sink(engine.run(corpus));
+            long elapsed = System.nanoTime() - start;
+            allocated += allocatedBytes() - allocatedBefore;
+            totalNanos += elapsed;
+            bestNanos = Math.min(bestNanos, elapsed);
+        }
+
+        double megabytes = corpus.bytes / (1024.0 * 1024.0);
+        System.out.printf("%-28s %-28s %10.1f %10.1f %12.2f%n",
+                engineName, corpus.name,
+                megabytes / (totalNanos / 1e9 / iterations),
+                megabytes / (bestNanos / 1e9),
+                (double) allocated / iterations / corpus.bytes);
+    }
+
+    // Bytes allocated so far by all live threads, or 0 if the JVM cannot report it
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return 0;
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        long total = 0;
+        for (long bytes : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            if (bytes > 0) {
+                total += bytes;
+            }
+        }
+        return total;
+    }
+
+    // Keeps results reachable so the JIT cannot drop the work
+    private static volatile int blackhole;
+
+    private static void sink(Object result) {
+        // Identity hash, since hashing a whole result map would dominate the measurement
+        blackhole += System.identityHashCode(result);
+    }
+
+    public static void main(String[] args) throws IOException {
+        long sizeBytes = (args.length > 0 ? Long.parseLong(args[0]) : 32) * 1024 * 1024;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        WordCounter counter = new WordCounter();
+
+        List<Corpus> corpora = new ArrayList<>();
+        corpora.add(generate(sizeBytes, true, 12, 1));
+        corpora.add(generate(sizeBytes, false, 12, 2));
+        corpora.add(generate(sizeBytes, true, 200, 3));
+        corpora.add(generate(sizeBytes / 8, true, 12, 4));
+
+        System.out.printf("%-28s %-28s %10s %10s %12s%n", "engine", "corpus", "avg MB/s", "best MB/s", "alloc B/B");
+        for (Corpus corpus : corpora) {
+            measure("regex split + HashMap", c -> regexSplitBaseline(c.text), corpus, iterations);
+            measure("countWords(String)", c -> counter.countWords(c.text), corpus, iterations);
+            measure("countWords(Path)", c -> counter.countWords(c.file), corpus, iterations);
+            measure("topK(Path, 100)", c -> counter.topK(c.file, 100), corpus, iterations);
+            measure("countNGrams(Path, 2)", c -> counter.countNGrams(c.file, 2), corpus, iterations);
+            measure("distinctWords(Path)", c -> counter.distinctWords(c.file), corpus, iterations);
+        }
+
+        // Scaling of the parallel engine on the largest Zipfian corpus
+        Corpus corpus = corpora.get(0);
+        int processors = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= processors; threads *= 2) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            long chunkSize = Math.max(1 << 20, corpus.bytes / (threads * 4));
+            ParallelWordCounter parallel = new ParallelWordCounter(pool, chunkSize);
+            measure("parallel x" + threads, c -> parallel.countWords(c.file), corpus, iterations);
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,225 @@
+import java.util.Arrays;
+import java.util.Map;
+
+// Open-addressing word count table. Words are stored back to back in one char
+// arena and counted in an int array, so a distinct word costs a few array slots
+// instead of a String, an Integer and a HashMap node. Each word gets a dense id
+// in insertion order; the slot table only holds those ids.
+final class WordCounts implements WordSink {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // Slot table of word id + 1, zero meaning empty; kept at most half full
+    private int[] slots;
+    private int mask;
+
+    // Per-word columns, indexed by word id
+    private int[] hashes;
+    private int[] offsets;
+    private int[] lengths;
+    private int[] counts;
+    private int size;
+
+    // Characters of every word, in id order
+    private char[] arena;
+    private int arenaLength;
+
+    WordCounts() {
+        slots = new int[INITIAL_CAPACITY];
+        mask = INITIAL_CAPACITY - 1;
+        hashes = new int[INITIAL_CAPACITY / 2];
+        offsets = new int[INITIAL_CAPACITY / 2];
+        lengths = new int[INITIAL_CAPACITY / 2];
+        counts = new int[INITIAL_CAPACITY / 2];
+        arena = new char[INITIAL_CAPACITY * 4];
+    }
+
+    @Override
+    public void accept(char[] chars, int length, int hash) {
+        add(chars, 0, length, hash, 1);
+    }
+
+    // Adds count occurrences of chars[0, length) and returns the word's id;
+    // hash must equal the String hash of those characters
+    int add(char[] chars, int length, int hash, int count) {
+        return add(chars, 0, length, hash, count);
+    }
+
+    int add(char[] chars, int offset, int length, int hash, int count) {
+        int slot = IdSlots.spread(hash) & mask;
+        int id;
+        while ((id = slots[slot] - 1) >= 0) {
+            if (hashes[id] == hash && matches(id, chars, offset, length)) {
+                counts[id] += count;
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return insert(slot, chars, offset, length, hash, count);
+    }
+
+    // Adds count occurrences of a word that is already a String and returns its id
+    int add(String word, int count) {
+        int hash = word.hashCode();
+        int found = probe(word, hash);
+        if (found >= 0) {
+            counts[found] += count;
+            return found;
+        }
+        char[] chars = word.toCharArray();
+        return insert(-found - 1, chars, 0, chars.length, hash, count);
+    }
+
+    // Like add, but throws ArithmeticException, leaving the count unchanged, if the sum does not fit an int
+    int addExact(String word, int count) {
+        int hash = word.hashCode();
+        int found = probe(word, hash);
+        if (found >= 0) {
+            counts[found] = Math.addExact(counts[found], count);
+            return found;
+        }
+        char[] chars = word.toCharArray();
+        return insert(-found - 1, chars, 0, chars.length, hash, count);
+    }
+
+    // Adds every count of another table into this one
+    void addAll(WordCounts other) {
+        for (int id = 0; id < other.size; id++) {
+            add(other.arena, other.offsets[id], other.lengths[id], other.hashes[id], other.counts[id]);
+        }
+    }
+
+    // Subtracts every count of another table from this one and returns how many words dropped to zero;
+    // those words keep their ids and slots until the table is rebuilt
+    int subtractAll(WordCounts other) {
+        int zeroed = 0;
+        for (int id = 0; id < other.size; id++) {
+            int own = add(other.arena, other.offsets[id], other.lengths[id], other.hashes[id], -other.counts[id]);
+            if (counts[own] == 0) {
+                zeroed++;
+            }
+        }
+        return zeroed;
+    }
+
+    // Returns the id of a word, or -1 if it has not been counted
+    int indexOf(String word) {
+        return Math.max(-1, probe(word, word.hashCode()));
+    }
+
+    // Returns the id of a word, or -(slot + 1) for the empty slot where it would be inserted
+    private int probe(String word, int hash) {
+        int slot = IdSlots.spread(hash) & mask;
+        int id;
+        while ((id = slots[slot] - 1) >= 0) {
+            if (hashes[id] == hash && matches(id, word)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -slot - 1;
+    }
+
+    int size() {
+        return size;
+    }
+
+    // Creates the String for a word id; nothing is cached
+    String word(int id) {
+        return new String(arena, offsets[id], lengths[id]);
+    }
+
+    int count(int id) {
+        return counts[id];
+    }
+
+    // Read-only Map view over the table; keys are built from the arena as they are visited
+    Map<String, Integer> asMap() {
+        return new IdSlots.CountMap() {
+            @Override
+            public int size() {
+                return size;
+            }
+
+            @Override
+            int find(String key) {
+                return indexOf(key);
+            }
+
+            @Override
+            String key(int id) {
+                return word(id);
+            }
+
+            @Override
+            int count(int id) {
+                return counts[id];
+            }
+        };
+    }
+
+    private int insert(int slot, char[] chars, int offset, int length, int hash, int count) {
+        int id = size;
+        if (id == counts.length) {
+            growColumns();
+        }
+        if (arenaLength + length > arena.length) {
+            char[] grown = new char[Math.max(arena.length * 2, arenaLength + length)];
+            System.arraycopy(arena, 0, grown, 0, arenaLength);
+            arena = grown;
+        }
+        System.arraycopy(chars, offset, arena, arenaLength, length);
+
+        hashes[id] = hash;
+        offsets[id] = arenaLength;
+        lengths[id] = length;
+        counts[id] = count;
+        arenaLength += length;
+        slots[slot] = id + 1;
+
+        if (++size * 2 > slots.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    private void growColumns() {
+        int capacity = counts.length * 2;
+        hashes = Arrays.copyOf(hashes, capacity);
+        offsets = Arrays.copyOf(offsets, capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+        counts = Arrays.copyOf(counts, capacity);
+    }
+
+    // Doubles the slot table; words themselves never move
+    private void rehash() {
+        slots = IdSlots.doubled(slots, hashes, size);
+        mask = slots.length - 1;
+    }
+
+    private boolean matches(int id, char[] chars, int offset, int length) {
+        if (lengths[id] != length) {
+            return false;
+        }
+        int start = offsets[id];
+        for (int i = 0; i < length; i++) {
+            if (arena[start + i] != chars[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean matches(int id, String word) {
+        if (lengths[id] != word.length()) {
+            return false;
+        }
+        int start = offsets[id];
+        for (int i = 0; i < word.length(); i++) {
+            if (arena[start + i] != word.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
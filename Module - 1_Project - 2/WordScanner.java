@@ -0,0 +1,86 @@
+import java.nio.CharBuffer;
+
+// Hand-written tokenizer: lowercases while scanning, hashes each word as its
+// characters arrive and hands the finished character range to a WordSink.
+// A word is a maximal run of [a-z0-9_] after lowercasing, the same as splitting
+// the lowercased text on \W+.
+final class WordScanner {
+
+    private final WordSink sink;
+    private char[] word = new char[64];
+    private int length;
+    private int hash;
+
+    WordScanner(WordSink sink) {
+        this.sink = sink;
+    }
+
+    // Scans a whole string; a word may continue into the next scan call
+    void scan(CharSequence text) {
+        for (int i = 0, n = text.length(); i < n; i++) {
+            accept(text.charAt(i));
+        }
+    }
+
+    // Scans the remaining characters of a buffer; a word may continue into the next scan call
+    void scan(CharBuffer chars) {
+        if (chars.hasArray()) {
+            char[] array = chars.array();
+            int end = chars.arrayOffset() + chars.limit();
+            for (int i = chars.arrayOffset() + chars.position(); i < end; i++) {
+                accept(array[i]);
+            }
+            chars.position(chars.limit());
+        } else {
+            while (chars.hasRemaining()) {
+                accept(chars.get());
+            }
+        }
+    }
+
+    // Counts the word left open at the end of the input
+    void finish() {
+        endWord();
+    }
+
+    private void accept(char c) {
+        if (c < 128) {
+            if (c >= 'A' && c <= 'Z') {
+                c += 'a' - 'A';
+            }
+        } else if (c == '\u0130') {
+            // String.toLowerCase turns LATIN CAPITAL LETTER I WITH DOT ABOVE into 'i' followed by U+0307
+            // COMBINING DOT ABOVE, which is not a word character; keep ending the word there as split did
+            append('i');
+            endWord();
+            return;
+        } else {
+            // Locale-independent, and the only way a non-ASCII character becomes a word character (e.g. KELVIN SIGN)
+            c = Character.toLowerCase(c);
+        }
+
+        if (WordCounter.isWordChar(c)) {
+            append(c);
+        } else {
+            endWord();
+        }
+    }
+
+    private void append(char c) {
+        if (length == word.length) {
+            char[] grown = new char[length * 2];
+            System.arraycopy(word, 0, grown, 0, length);
+            word = grown;
+        }
+        word[length++] = c;
+        hash = 31 * hash + c;
+    }
+
+    private void endWord() {
+        if (length > 0) {
+            sink.accept(word, length, hash);
+            length = 0;
+            hash = 0;
+        }
+    }
+}
@@ -0,0 +1,7 @@
+// Receives each word found by a WordScanner as a lowercased character range
+interface WordSink {
+
+    // chars[0, length) holds the word and hash is the String hash of those characters;
+    // the array is reused, so implementations must copy anything they keep
+    void accept(char[] chars, int length, int hash);
+}
@@ -1,83 +1,1189 @@
+import java.io.ByteArrayInputStream;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
 
+// One logged-in user, identified by an unguessable token
 class UserSession {
-    private static UserSession instance = null;
-    private boolean isLoggedIn;
-    private String username;
+    private final String token;
+    private final String username;
+    private final long createdAt;
+    private volatile long lastAccess;
 
-    private UserSession() {
-        this.isLoggedIn = false;
-        this.username = "";
+    // Entry in the registry's expiry wheel; guarded by the wheel
+    TimingWheel.Timer<UserSession> timer;
+
+    UserSession(String token, String username, long now) {
+        this.token = token;
+        this.username = username;
+        this.createdAt = now;
+        this.lastAccess = now;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public String getUsername() {
+        return username;
     }
 
-    public static UserSession getInstance() {
-        if (instance == null) {
-            instance = new UserSession();
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public long getLastAccess() {
+        return lastAccess;
+    }
+
+    void touch(long now) {
+        lastAccess = now;
+    }
+}
+
+// Hierarchical timing wheel: four levels of 64 slots, where a level-0 slot
+// covers one tick and every level above is 64 times coarser. A timer sits in
+// a doubly linked slot list, so scheduling, rescheduling and cancelling are
+// O(1) however many timers are live. Advancing the clock visits one level-0
+// slot per tick and, every 64 ticks, moves one coarser slot down a level.
+// Not thread-safe; callers synchronize.
+class TimingWheel<T> {
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int LEVELS = 4;
+
+    // Timers further away than this are parked in the top level and placed again when it cascades
+    private static final long MAX_TICKS = 1L << (SLOT_BITS * LEVELS);
+
+    static final class Timer<T> {
+        final T item;
+        private long deadlineTick;
+        private Timer<T> prev;
+        private Timer<T> next;
+
+        Timer(T item) {
+            this.item = item;
+        }
+
+        boolean isScheduled() {
+            return prev != null;
         }
-        return instance;
     }
 
-    public void login(String username) {
-        if (!isLoggedIn) {
-            this.username = username;
-            this.isLoggedIn = true;
-            System.out.println(username + " logged in successfully.");
-        } else {
-            System.out.println("User already logged in.");
+    private final long tickMillis;
+
+    // slots[level][index] is the sentinel of a circular list
+    private final Timer<T>[][] slots;
+
+    private long currentTick;
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    TimingWheel(long tickMillis, long nowMillis) {
+        this.tickMillis = tickMillis;
+        this.currentTick = nowMillis / tickMillis;
+        this.slots = (Timer<T>[][]) new Timer<?>[LEVELS][SLOTS];
+        for (Timer<T>[] level : slots) {
+            for (int i = 0; i < SLOTS; i++) {
+                Timer<T> sentinel = new Timer<>(null);
+                sentinel.prev = sentinel;
+                sentinel.next = sentinel;
+                level[i] = sentinel;
+            }
+        }
+    }
+
+    Timer<T> schedule(T item, long deadlineMillis) {
+        Timer<T> timer = new Timer<>(item);
+        reschedule(timer, deadlineMillis);
+        return timer;
+    }
+
+    // Moves timer to a new deadline; also schedules a timer that expired or was cancelled
+    void reschedule(Timer<T> timer, long deadlineMillis) {
+        cancel(timer);
+        // Round up so that a timer never fires before its deadline
+        timer.deadlineTick = (deadlineMillis + tickMillis - 1) / tickMillis;
+        // The slot of the current tick has already fired, so a deadline already passed fires on the next one
+        insert(timer, currentTick + 1);
+        size++;
+    }
+
+    void cancel(Timer<T> timer) {
+        if (timer.isScheduled()) {
+            unlink(timer);
+            size--;
+        }
+    }
+
+    // Moves the clock forward to nowMillis and returns the items whose deadline has passed
+    List<T> advance(long nowMillis) {
+        List<T> expired = new ArrayList<>();
+        long nowTick = nowMillis / tickMillis;
+        if (size == 0 && nowTick > currentTick) {
+            currentTick = nowTick;
+        }
+        while (currentTick < nowTick) {
+            currentTick++;
+
+            // At the start of each coarser period, spread its slot over the finer levels
+            for (int level = 1; level < LEVELS; level++) {
+                if ((currentTick & ((1L << (SLOT_BITS * level)) - 1)) != 0) {
+                    break;
+                }
+                Timer<T> sentinel = slots[level][index(currentTick, level)];
+                for (Timer<T> timer = detach(sentinel); timer != null; ) {
+                    Timer<T> next = timer.next;
+                    insert(timer, currentTick);
+                    timer = next;
+                }
+            }
+
+            Timer<T> sentinel = slots[0][index(currentTick, 0)];
+            for (Timer<T> timer = detach(sentinel); timer != null; ) {
+                Timer<T> next = timer.next;
+                timer.next = null;
+                size--;
+                expired.add(timer.item);
+                timer = next;
+            }
+        }
+        return expired;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void insert(Timer<T> timer, long earliestTick) {
+        long tick = Math.max(timer.deadlineTick, earliestTick);
+        long delta = tick - currentTick;
+        if (delta >= MAX_TICKS) {
+            tick = currentTick + MAX_TICKS - 1;
+            delta = MAX_TICKS - 1;
         }
+        int level = 0;
+        while (delta >= 1L << (SLOT_BITS * (level + 1))) {
+            level++;
+        }
+        Timer<T> sentinel = slots[level][index(tick, level)];
+        timer.prev = sentinel.prev;
+        timer.next = sentinel;
+        sentinel.prev.next = timer;
+        sentinel.prev = timer;
     }
 
-    public void logout() {
-        if (isLoggedIn) {
-            this.username = "";
-            this.isLoggedIn = false;
+    private static <T> void unlink(Timer<T> timer) {
+        timer.prev.next = timer.next;
+        timer.next.prev = timer.prev;
+        timer.prev = null;
+        timer.next = null;
+    }
+
+    // Empties the slot and returns its timers as a null-terminated chain linked by next
+    private static <T> Timer<T> detach(Timer<T> sentinel) {
+        Timer<T> first = sentinel.next == sentinel ? null : sentinel.next;
+        if (first != null) {
+            sentinel.prev.next = null;
+        }
+        for (Timer<T> timer = first; timer != null; timer = timer.next) {
+            timer.prev = null;
+        }
+        sentinel.next = sentinel;
+        sentinel.prev = sentinel;
+        return first;
+    }
+
+    private static int index(long tick, int level) {
+        return (int) (tick >>> (SLOT_BITS * level)) & (SLOTS - 1);
+    }
+}
+
+// All live sessions, keyed by their token. Any number of users can be logged in
+// at once, and checking a token is a single lock-free ConcurrentHashMap lookup.
+// A session ends after idleTimeout without use or absoluteTimeout after login.
+// Using a session only records the time; the expiry wheel still holds the
+// deadline from when it was scheduled, and a session found there still in use
+// is moved to its new deadline instead of being ended.
+class SessionRegistry {
+    static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 15 * 60 * 1000;
+    static final long DEFAULT_ABSOLUTE_TIMEOUT_MILLIS = 8 * 60 * 60 * 1000;
+    private static final long TICK_MILLIS = 1000;
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+
+    private final ConcurrentHashMap<String, UserSession> sessions = new ConcurrentHashMap<>();
+
+    private final long idleTimeoutMillis;
+    private final long absoluteTimeoutMillis;
+
+    // Guarded by itself
+    private final TimingWheel<UserSession> expiry;
+
+    private final ScheduledExecutorService reaper = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "session-reaper");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public SessionRegistry() {
+        this(DEFAULT_IDLE_TIMEOUT_MILLIS, DEFAULT_ABSOLUTE_TIMEOUT_MILLIS);
+    }
+
+    public SessionRegistry(long idleTimeoutMillis, long absoluteTimeoutMillis) {
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.absoluteTimeoutMillis = absoluteTimeoutMillis;
+        this.expiry = new TimingWheel<>(TICK_MILLIS, System.currentTimeMillis());
+        reaper.scheduleAtFixedRate(this::expireSessions, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    // Starts a session for username and returns its token
+    public String login(String username) {
+        byte[] bytes = new byte[32];
+        RANDOM.nextBytes(bytes);
+        String token = ENCODER.encodeToString(bytes);
+        UserSession session = new UserSession(token, username, System.currentTimeMillis());
+        synchronized (expiry) {
+            session.timer = expiry.schedule(session, expiresAt(session));
+        }
+        sessions.put(token, session);
+        System.out.println(username + " logged in successfully.");
+        return token;
+    }
+
+    public void logout(String token) {
+        UserSession session = token == null ? null : sessions.remove(token);
+        if (session != null) {
+            synchronized (expiry) {
+                expiry.cancel(session.timer);
+            }
             System.out.println("User logged out successfully.");
         } else {
             System.out.println("No user is logged in.");
         }
     }
 
-    public boolean isLoggedIn() {
-        return isLoggedIn;
+    // Returns the session of token and marks it as used, or returns null if it is unknown, has
+    // ended or has expired
+    public UserSession get(String token) {
+        UserSession session = token == null ? null : sessions.get(token);
+        if (session == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        if (now >= expiresAt(session)) {
+            return null;
+        }
+        session.touch(now);
+        return session;
     }
 
-    public String getUsername() {
-        return username;
+    public int size() {
+        return sessions.size();
+    }
+
+    private long expiresAt(UserSession session) {
+        return Math.min(session.getLastAccess() + idleTimeoutMillis, session.getCreatedAt() + absoluteTimeoutMillis);
+    }
+
+    // Runs every tick on the reaper thread
+    private void expireSessions() {
+        long now = System.currentTimeMillis();
+        synchronized (expiry) {
+            for (UserSession session : expiry.advance(now)) {
+                long deadline = expiresAt(session);
+                if (deadline > now) {
+                    expiry.reschedule(session.timer, deadline);
+                } else if (sessions.remove(session.getToken(), session)) {
+                    System.out.println("Session of " + session.getUsername() + " expired.");
+                }
+            }
+        }
+    }
+}
+
+// One account in the Bank's store. The balance is kept in whole cents so that
+// concurrent updates never accumulate rounding errors. Reads are lock-free
+// (the balance is volatile); changes are made under the account's own lock,
+// so threads working on different accounts never wait for each other.
+class Account {
+    private static final AtomicLong NEXT_SEQUENCE = new AtomicLong();
+
+    private final String id;
+
+    // Unique, increasing number used as a global lock order when several accounts are locked together
+    private final long sequence;
+
+    final ReentrantLock lock = new ReentrantLock();
+
+    private volatile long cents;
+
+    Account(String id, long cents) {
+        this.id = id;
+        this.sequence = NEXT_SEQUENCE.getAndIncrement();
+        this.cents = cents;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getCents() {
+        return cents;
+    }
+
+    // Throws ArithmeticException, leaving the balance unchanged, if it would overflow
+    public long deposit(long amount) {
+        lock.lock();
+        try {
+            cents = Math.addExact(cents, amount);
+            return cents;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Returns false, leaving the balance unchanged, if the balance is less than amount
+    public boolean withdraw(long amount) {
+        lock.lock();
+        try {
+            if (cents < amount) {
+                return false;
+            }
+            cents -= amount;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Adds delta, which may be negative; the caller holds lock and has checked the balance. Throws
+    // ArithmeticException, leaving the balance unchanged, if it would overflow.
+    void adjust(long delta) {
+        cents = Math.addExact(cents, delta);
+    }
+}
+
+// One movement of money between two accounts, for Bank.transferBatch
+class Transfer {
+    private final String fromAccountId;
+    private final String toAccountId;
+    private final double amount;
+
+    public Transfer(String fromAccountId, String toAccountId, double amount) {
+        this.fromAccountId = fromAccountId;
+        this.toAccountId = toAccountId;
+        this.amount = amount;
+    }
+
+    public String getFromAccountId() {
+        return fromAccountId;
+    }
+
+    public String getToAccountId() {
+        return toAccountId;
+    }
+
+    public double getAmount() {
+        return amount;
+    }
+
+    @Override
+    public String toString() {
+        return fromAccountId + " -> " + toAccountId + " $" + String.format("%.2f", amount);
+    }
+}
+
+// Append-only write-ahead journal of Bank operations. Each record is framed as
+// int length, int CRC32, then the payload, so a record torn by a crash is
+// detected and cut off when the journal is replayed at startup.
+//
+// Writers append to an in-memory batch and a single committer thread writes
+// the batch out. Whatever accumulates while one force() is running goes into
+// the next one, so many concurrent operations share a single disk sync (group
+// commit). The SyncPolicy decides when data is forced to disk:
+//   ALWAYS   - before append returns; nothing acknowledged is ever lost
+//   INTERVAL - at most once per interval; a crash loses at most the last interval
+//   NONE     - never explicitly; the operating system writes it back eventually
+//
+// A checkpoint replaces the whole journal with the current balances, so the
+// file only holds the changes made since the last one.
+class Journal implements Closeable {
+    enum SyncPolicy { ALWAYS, INTERVAL, NONE }
+
+    static final byte DEPOSIT = 1;
+    static final byte WITHDRAW = 2;
+
+    // A record of one or more transfers, replayed all or not at all
+    static final byte TRANSFER = 3;
+
+    // The balances of accounts at a checkpoint; only found at the start of the journal
+    static final byte CHECKPOINT = 4;
+
+    // An account opened with the balance in the record; every other record names only open accounts
+    static final byte OPEN = 5;
+
+    // Accounts per CHECKPOINT record, which keeps each record small however many accounts there are
+    private static final int CHECKPOINT_BATCH = 4096;
+
+    // Receives the records of an existing journal, in the order they were appended; toAccountId is
+    // only set for TRANSFER, and a record of several transfers or balances is passed on one at a time
+    interface Replayer {
+        void apply(byte type, String accountId, String toAccountId, long cents);
+    }
+
+    private final Path file;
+
+    // Replaced by checkpoint; guarded by this, and only used by the committer while nothing is pending
+    private FileChannel channel;
+
+    private final SyncPolicy policy;
+    private final long intervalMillis;
+    private final Thread committer;
+
+    // Records appended but not yet handed to the committer, and the buffer it is writing from; guarded by this
+    private ByteBuffer pending = ByteBuffer.allocate(64 * 1024);
+    private ByteBuffer writing = ByteBuffer.allocate(64 * 1024);
+
+    // Sequence numbers of the last record appended and of the last one written under the policy; guarded by this
+    private long appended;
+    private long committed;
+
+    private IOException failure;
+    private boolean closed;
+
+    private Journal(Path file, FileChannel channel, SyncPolicy policy, long intervalMillis) {
+        this.file = file;
+        this.channel = channel;
+        this.policy = policy;
+        this.intervalMillis = intervalMillis;
+        this.committer = new Thread(this::commitLoop, "journal-committer");
+        committer.setDaemon(true);
+        committer.start();
+    }
+
+    // Opens or creates the journal, replays its records into replayer and positions it for appending.
+    // A torn or corrupt tail left by a crash is truncated.
+    static Journal open(Path file, SyncPolicy policy, long intervalMillis, Replayer replayer) throws IOException {
+        FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long valid = replay(channel, replayer);
+            if (valid < channel.size()) {
+                System.out.println("Truncating damaged journal tail at byte " + valid + ".");
+                channel.truncate(valid);
+            }
+            channel.position(valid);
+            return new Journal(file, channel, policy, intervalMillis);
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    // Returns the length of the intact prefix of the journal. The file is streamed through a small
+    // buffer, one record at a time, so its size is not limited by memory or by the 2 GB of a mapping.
+    private static long replay(FileChannel channel, Replayer replayer) throws IOException {
+        long size = channel.size();
+        channel.position(0);
+        DataInputStream data = new DataInputStream(
+                new BufferedInputStream(Channels.newInputStream(channel), 64 * 1024));
+        CRC32 crc = new CRC32();
+        long position = 0;
+        while (size - position >= 8) {
+            int length = data.readInt();
+            int checksum = data.readInt();
+            if (length <= 0 || length > size - position - 8) {
+                return position;
+            }
+            byte[] payload = new byte[length];
+            data.readFully(payload);
+            crc.reset();
+            crc.update(payload);
+            if ((int) crc.getValue() != checksum) {
+                return position;
+            }
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+            byte type = in.readByte();
+            if (type == TRANSFER) {
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    String from = in.readUTF();
+                    String to = in.readUTF();
+                    replayer.apply(type, from, to, in.readLong());
+                }
+            } else if (type == CHECKPOINT) {
+                int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    String accountId = in.readUTF();
+                    replayer.apply(type, accountId, null, in.readLong());
+                }
+            } else {
+                long cents = in.readLong();
+                replayer.apply(type, in.readUTF(), null, cents);
+            }
+            position += 8 + length;
+        }
+        return position;
+    }
+
+    // Adds a record and returns its sequence number, to be passed to await
+    long append(byte type, String accountId, long cents) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(type);
+            out.writeLong(cents);
+            out.writeUTF(accountId);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return appendRecord(bytes.toByteArray());
+    }
+
+    // Adds the first count transfers as a single record, so that replay applies either all or none of them
+    long appendTransfers(String[] from, String[] to, long[] cents, int count) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + count * 32);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(TRANSFER);
+            out.writeInt(count);
+            for (int i = 0; i < count; i++) {
+                out.writeUTF(from[i]);
+                out.writeUTF(to[i]);
+                out.writeLong(cents[i]);
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return appendRecord(bytes.toByteArray());
+    }
+
+    private long appendRecord(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("Journal is closed");
+            }
+            if (pending.remaining() < payload.length + 8) {
+                int needed = pending.position() + payload.length + 8;
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, needed));
+                pending.flip();
+                pending = larger.put(pending);
+            }
+            pending.putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+            appended++;
+            notifyAll();
+            return appended;
+        }
+    }
+
+    // Replaces the journal with CHECKPOINT records of the first count balances, which the caller keeps
+    // from changing meanwhile. Everything appended so far is written out first; the new journal is
+    // then written next to the old one and moved over it, so a crash leaves one or the other.
+    void checkpoint(String[] accountIds, long[] cents, int count) throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("Journal is closed");
+            }
+            boolean interrupted = false;
+            while (committed < appended && failure == null) {
+                try {
+                    wait();
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (failure != null) {
+                throw new IOException("Journal write failed", failure);
+            }
+
+            try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                CRC32 crc = new CRC32();
+                for (int start = 0; start < count; start += CHECKPOINT_BATCH) {
+                    int end = Math.min(count, start + CHECKPOINT_BATCH);
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + (end - start) * 32);
+                    try (DataOutputStream record = new DataOutputStream(bytes)) {
+                        record.writeByte(CHECKPOINT);
+                        record.writeInt(end - start);
+                        for (int i = start; i < end; i++) {
+                            record.writeUTF(accountIds[i]);
+                            record.writeLong(cents[i]);
+                        }
+                    }
+                    byte[] payload = bytes.toByteArray();
+                    crc.reset();
+                    crc.update(payload);
+                    ByteBuffer frame = ByteBuffer.allocate(payload.length + 8);
+                    frame.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+                    while (frame.hasRemaining()) {
+                        out.write(frame);
+                    }
+                }
+                out.force(true);
+            }
+            Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+            FileChannel replaced = channel;
+            channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            channel.position(channel.size());
+            replaced.close();
+        }
+    }
+
+    // Under SyncPolicy.ALWAYS, blocks until record sequence is on disk; returns at once under the other policies
+    void await(long sequence) {
+        if (policy != SyncPolicy.ALWAYS) {
+            return;
+        }
+        synchronized (this) {
+            boolean interrupted = false;
+            while (committed < sequence && failure == null) {
+                try {
+                    wait();
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (failure != null && committed < sequence) {
+                throw new UncheckedIOException("Journal write failed", failure);
+            }
+        }
+    }
+
+    private void commitLoop() {
+        try {
+            while (true) {
+                long batchEnd;
+                FileChannel out;
+                synchronized (this) {
+                    while (pending.position() == 0 && !closed) {
+                        wait();
+                    }
+                    if (pending.position() == 0) {
+                        return;
+                    }
+                    ByteBuffer batch = pending;
+                    pending = writing;
+                    writing = batch;
+                    batchEnd = appended;
+                    out = channel;
+                }
+
+                writing.flip();
+                while (writing.hasRemaining()) {
+                    out.write(writing);
+                }
+                writing.clear();
+                if (policy != SyncPolicy.NONE) {
+                    out.force(false);
+                }
+
+                synchronized (this) {
+                    committed = batchEnd;
+                    notifyAll();
+                }
+                if (policy == SyncPolicy.INTERVAL) {
+                    Thread.sleep(intervalMillis);
+                }
+            }
+        } catch (IOException ex) {
+            synchronized (this) {
+                failure = ex;
+                notifyAll();
+            }
+            System.out.println("Journal write failed: " + ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Writes out and forces everything appended so far, then closes the file
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        try {
+            committer.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            channel.force(false);
+        } finally {
+            channel.close();
+        }
     }
 }
 
 class Bank {
-    private double balance;
+    // Largest amount accepted, in dollars; up to here a double still holds every cent exactly
+    static final double MAX_AMOUNT = 10_000_000_000_000.0;
+
+    // Accounts by ID; lookups are lock-free and accounts are created at most once
+    private final ConcurrentHashMap<String, Account> accounts = new ConcurrentHashMap<>();
+
+    private final SessionRegistry sessions;
+
+    // Records every change of a balance, or null if balances are kept in memory only
+    private final Journal journal;
+
+    // Records other than checkpoints found in the journal at startup
+    private long replayedChanges;
+
+    // Held while an account is added to the journal and while a checkpoint takes the balances, so a
+    // checkpoint never misses an account whose OPEN record it replaces
+    private final Object openLock = new Object();
+
+    public Bank(SessionRegistry sessions) {
+        this.sessions = sessions;
+        this.journal = null;
+    }
+
+    // Restores the accounts and balances recorded in the journal file and records every later change
+    // there. If the journal held any changes, it is replaced by a checkpoint of the restored balances.
+    public Bank(SessionRegistry sessions, Path journalFile, Journal.SyncPolicy policy, long syncIntervalMillis)
+            throws IOException {
+        this.sessions = sessions;
+        this.journal = Journal.open(journalFile, policy, syncIntervalMillis, this::replay);
+        if (replayedChanges > 0) {
+            try {
+                checkpoint();
+            } catch (IOException | RuntimeException ex) {
+                journal.close();
+                throw ex;
+            }
+        }
+    }
+
+    // Opens an account with the given balance; returns false, changing nothing, if it is already open
+    public boolean openAccount(String accountId, double initialBalance) {
+        long cents = toCents(initialBalance);
+        if (cents < 0) {
+            throw new IllegalArgumentException("Initial balance must not be negative: " + initialBalance);
+        }
+        Account account = new Account(accountId, cents);
+        if (journal == null) {
+            return accounts.putIfAbsent(accountId, account) == null;
+        }
+
+        // Locked before it is visible, so no change to the account can be journaled ahead of its opening
+        long sequence;
+        account.lock.lock();
+        try {
+            synchronized (openLock) {
+                if (accounts.putIfAbsent(accountId, account) != null) {
+                    return false;
+                }
+                sequence = journal.append(Journal.OPEN, accountId, cents);
+            }
+        } finally {
+            account.lock.unlock();
+        }
+        journal.await(sequence);
+        return true;
+    }
+
+    public boolean hasAccount(String accountId) {
+        return accounts.containsKey(accountId);
+    }
+
+    // Returns the account with the given ID; throws IllegalArgumentException if it is not open
+    public Account getAccount(String accountId) {
+        Account account = accounts.get(accountId);
+        if (account == null) {
+            throw new IllegalArgumentException("No such account: " + accountId);
+        }
+        return account;
+    }
+
+    // Thread-safe operations on any open account; amounts are in dollars, and an account that is
+    // not open is rejected with IllegalArgumentException
+
+    public double getBalance(String accountId) {
+        return getAccount(accountId).getCents() / 100.0;
+    }
+
+    // Returns the new balance
+    public double credit(String accountId, double amount) {
+        long cents = toPositiveCents(amount);
+        Account account = getAccount(accountId);
+        if (journal == null) {
+            return account.deposit(cents) / 100.0;
+        }
+
+        // Journal while holding the account lock, so the journal has each account's changes in the order applied
+        long balance;
+        long sequence;
+        account.lock.lock();
+        try {
+            balance = account.deposit(cents);
+            sequence = journal.append(Journal.DEPOSIT, accountId, cents);
+        } finally {
+            account.lock.unlock();
+        }
+        journal.await(sequence);
+        return balance / 100.0;
+    }
+
+    // Returns false if the balance is less than amount
+    public boolean debit(String accountId, double amount) {
+        long cents = toPositiveCents(amount);
+        Account account = getAccount(accountId);
+        if (journal == null) {
+            return account.withdraw(cents);
+        }
+
+        long sequence;
+        account.lock.lock();
+        try {
+            if (!account.withdraw(cents)) {
+                return false;
+            }
+            sequence = journal.append(Journal.WITHDRAW, accountId, cents);
+        } finally {
+            account.lock.unlock();
+        }
+        journal.await(sequence);
+        return true;
+    }
+
+    // Moves amount between two accounts; returns false, changing nothing, if from has less than amount,
+    // and throws IllegalArgumentException if either account is not open. Both accounts are locked in
+    // order of their sequence numbers, so two opposite transfers never deadlock.
+    public boolean transfer(String fromAccountId, String toAccountId, double amount) {
+        if (fromAccountId.equals(toAccountId)) {
+            throw new IllegalArgumentException("Cannot transfer to the same account: " + fromAccountId);
+        }
+        long cents = toPositiveCents(amount);
+        Account from = getAccount(fromAccountId);
+        Account to = getAccount(toAccountId);
+        Account first = from.getSequence() < to.getSequence() ? from : to;
+        Account second = first == from ? to : from;
+
+        long sequence = 0;
+        first.lock.lock();
+        try {
+            second.lock.lock();
+            try {
+                if (from.getCents() < cents) {
+                    return false;
+                }
+                // Credit first: only that can overflow, and then nothing has changed yet
+                to.adjust(cents);
+                from.adjust(-cents);
+                if (journal != null) {
+                    sequence = journal.appendTransfers(new String[] {fromAccountId}, new String[] {toAccountId},
+                            new long[] {cents}, 1);
+                }
+            } finally {
+                second.lock.unlock();
+            }
+        } finally {
+            first.lock.unlock();
+        }
+        if (journal != null) {
+            journal.await(sequence);
+        }
+        return true;
+    }
 
-    public Bank(double initialBalance) {
-        this.balance = initialBalance;
+    // Applies all transfers or none of them; returns one message per transfer that failed, or an
+    // empty list if all were applied
+    public List<String> transferBatch(List<Transfer> transfers) {
+        return transferBatch(transfers, true);
     }
 
-    public void viewBalance() {
-        UserSession session = UserSession.getInstance();
-        if (session.isLoggedIn()) {
-            System.out.println("Balance for " + session.getUsername() + ": $" + balance);
+    // Applies transfers in list order and returns one message per transfer that failed. With
+    // allOrNothing, nothing is applied if any transfer fails; otherwise every transfer that can be
+    // applied is, and the failed ones are skipped.
+    //
+    // All accounts of the batch are locked once, in order of their sequence numbers, and the
+    // transfers run against local copies of the balances; each account is then updated once with
+    // its final balance and the whole batch is journaled as one record.
+    public List<String> transferBatch(List<Transfer> transfers, boolean allOrNothing) {
+        int count = transfers.size();
+        List<String> failures = new ArrayList<>();
+
+        // Give every account of the batch a local index; accounts[i] holds the account with index i
+        Map<Account, Integer> indexes = new IdentityHashMap<>();
+        List<Account> accounts = new ArrayList<>();
+        int[] fromIndex = new int[count];
+        int[] toIndex = new int[count];
+        long[] cents = new long[count];
+        for (int i = 0; i < count; i++) {
+            Transfer transfer = transfers.get(i);
+            if (!isValidAmount(transfer.getAmount())) {
+                failures.add("Transfer " + i + " (" + transfer + "): amount must be positive and at most $"
+                        + format(MAX_AMOUNT));
+                fromIndex[i] = -1;
+                continue;
+            }
+            cents[i] = toCents(transfer.getAmount());
+            if (transfer.getFromAccountId().equals(transfer.getToAccountId())) {
+                failures.add("Transfer " + i + " (" + transfer + "): same account on both sides");
+                fromIndex[i] = -1;
+                continue;
+            }
+            Account from = this.accounts.get(transfer.getFromAccountId());
+            Account to = this.accounts.get(transfer.getToAccountId());
+            if (from == null || to == null) {
+                failures.add("Transfer " + i + " (" + transfer + "): no such account "
+                        + (from == null ? transfer.getFromAccountId() : transfer.getToAccountId()));
+                fromIndex[i] = -1;
+                continue;
+            }
+            fromIndex[i] = indexOf(from, indexes, accounts);
+            toIndex[i] = indexOf(to, indexes, accounts);
+        }
+        if (allOrNothing && !failures.isEmpty()) {
+            return failures;
+        }
+
+        List<Account> lockOrder = new ArrayList<>(accounts);
+        lockOrder.sort(Comparator.comparingLong(Account::getSequence));
+        int locked = 0;
+        long sequence = 0;
+        try {
+            for (Account account : lockOrder) {
+                account.lock.lock();
+                locked++;
+            }
+
+            long[] balances = new long[accounts.size()];
+            for (int a = 0; a < balances.length; a++) {
+                balances[a] = accounts.get(a).getCents();
+            }
+            String[] appliedFrom = new String[count];
+            String[] appliedTo = new String[count];
+            long[] appliedCents = new long[count];
+            int applied = 0;
+            for (int i = 0; i < count; i++) {
+                if (fromIndex[i] < 0) {
+                    continue;
+                }
+                if (balances[fromIndex[i]] < cents[i]) {
+                    failures.add("Transfer " + i + " (" + transfers.get(i) + "): insufficient balance");
+                    continue;
+                }
+                // Balances are never negative, so a sum below zero has overflowed
+                if (balances[toIndex[i]] + cents[i] < 0) {
+                    failures.add("Transfer " + i + " (" + transfers.get(i) + "): balance would overflow");
+                    continue;
+                }
+                balances[fromIndex[i]] -= cents[i];
+                balances[toIndex[i]] += cents[i];
+                appliedFrom[applied] = transfers.get(i).getFromAccountId();
+                appliedTo[applied] = transfers.get(i).getToAccountId();
+                appliedCents[applied] = cents[i];
+                applied++;
+            }
+            if (applied == 0 || (allOrNothing && !failures.isEmpty())) {
+                return failures;
+            }
+
+            for (int a = 0; a < balances.length; a++) {
+                Account account = accounts.get(a);
+                account.adjust(balances[a] - account.getCents());
+            }
+            if (journal != null) {
+                sequence = journal.appendTransfers(appliedFrom, appliedTo, appliedCents, applied);
+            }
+        } finally {
+            for (int a = 0; a < locked; a++) {
+                lockOrder.get(a).lock.unlock();
+            }
+        }
+        if (journal != null) {
+            journal.await(sequence);
+        }
+        return failures;
+    }
+
+    private static int indexOf(Account account, Map<Account, Integer> indexes, List<Account> accounts) {
+        Integer index = indexes.get(account);
+        if (index == null) {
+            index = accounts.size();
+            indexes.put(account, index);
+            accounts.add(account);
+        }
+        return index;
+    }
+
+    // Replaces the journal with a record of the current balances, so that it stops growing and a restart
+    // replays one record per account instead of every change ever made. All accounts are locked, in
+    // order of their sequence numbers, while the balances are taken and written.
+    public void checkpoint() throws IOException {
+        if (journal == null) {
+            return;
+        }
+        synchronized (openLock) {
+            List<Account> lockOrder = new ArrayList<>(accounts.values());
+            lockOrder.sort(Comparator.comparingLong(Account::getSequence));
+            int locked = 0;
+            try {
+                for (Account account : lockOrder) {
+                    account.lock.lock();
+                    locked++;
+                }
+                String[] accountIds = new String[lockOrder.size()];
+                long[] cents = new long[lockOrder.size()];
+                for (int a = 0; a < accountIds.length; a++) {
+                    accountIds[a] = lockOrder.get(a).getId();
+                    cents[a] = lockOrder.get(a).getCents();
+                }
+                journal.checkpoint(accountIds, cents, accountIds.length);
+            } finally {
+                for (int a = 0; a < locked; a++) {
+                    lockOrder.get(a).lock.unlock();
+                }
+            }
+        }
+    }
+
+    // Writes out everything journaled so far and closes the journal
+    public void close() throws IOException {
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    private void replay(byte type, String accountId, String toAccountId, long cents) {
+        if (type != Journal.CHECKPOINT) {
+            replayedChanges++;
+        }
+        switch (type) {
+            case Journal.DEPOSIT:
+                replayedAccount(accountId).deposit(cents);
+                break;
+            case Journal.WITHDRAW:
+                if (!replayedAccount(accountId).withdraw(cents)) {
+                    throw new IllegalStateException("Journal withdraws more than the balance of " + accountId);
+                }
+                break;
+            case Journal.TRANSFER:
+                if (!replayedAccount(accountId).withdraw(cents)) {
+                    throw new IllegalStateException("Journal transfers more than the balance of " + accountId);
+                }
+                replayedAccount(toAccountId).deposit(cents);
+                break;
+            case Journal.OPEN:
+            case Journal.CHECKPOINT:
+                if (accounts.putIfAbsent(accountId, new Account(accountId, cents)) != null) {
+                    throw new IllegalStateException("Journal opens " + accountId + " twice");
+                }
+                break;
+            default:
+                throw new IllegalStateException("Unknown journal record type " + type);
+        }
+    }
+
+    private Account replayedAccount(String accountId) {
+        Account account = accounts.get(accountId);
+        if (account == null) {
+            throw new IllegalStateException("Journal changes " + accountId + " before opening it");
+        }
+        return account;
+    }
+
+    // Tells the user logged in with session if they have no open account
+    private boolean hasAccount(UserSession session) {
+        if (!hasAccount(session.getUsername())) {
+            System.out.println("No account is open for " + session.getUsername() + ".");
+            return false;
+        }
+        return true;
+    }
+
+    // Operations on the account of the user logged in with token
+
+    public void viewBalance(String token) {
+        UserSession session = sessions.get(token);
+        if (session != null) {
+            if (!hasAccount(session)) {
+                return;
+            }
+            double balance = getBalance(session.getUsername());
+            System.out.println("Balance for " + session.getUsername() + ": $" + format(balance));
         } else {
             System.out.println("Please log in to view balance.");
         }
     }
 
-    public void deposit(double amount) {
-        UserSession session = UserSession.getInstance();
-        if (session.isLoggedIn()) {
-            balance += amount;
-            System.out.println("Deposited $" + amount + ". New balance: $" + balance);
+    public void deposit(String token, double amount) {
+        UserSession session = sessions.get(token);
+        if (session != null) {
+            if (!hasAccount(session)) {
+                return;
+            }
+            if (!isValidAmount(amount)) {
+                System.out.println("Amount must be positive and at most $" + format(MAX_AMOUNT) + ".");
+                return;
+            }
+            try {
+                double balance = credit(session.getUsername(), amount);
+                System.out.println("Deposited $" + format(amount) + ". New balance: $" + format(balance));
+            } catch (ArithmeticException ex) {
+                System.out.println("Deposit refused: the balance would overflow.");
+            }
         } else {
             System.out.println("Please log in to deposit money.");
         }
     }
 
-    public void withdraw(double amount) {
-        UserSession session = UserSession.getInstance();
-        if (session.isLoggedIn()) {
-            if (balance >= amount) {
-                balance -= amount;
-                System.out.println("Withdrew $" + amount + ". New balance: $" + balance);
+    public void withdraw(String token, double amount) {
+        UserSession session = sessions.get(token);
+        if (session != null) {
+            if (!hasAccount(session)) {
+                return;
+            }
+            if (!isValidAmount(amount)) {
+                System.out.println("Amount must be positive and at most $" + format(MAX_AMOUNT) + ".");
+            } else if (debit(session.getUsername(), amount)) {
+                System.out.println("Withdrew $" + format(amount) + ". New balance: $"
+                        + format(getBalance(session.getUsername())));
             } else {
                 System.out.println("Insufficient balance.");
             }
@@ -85,42 +1191,109 @@ class Bank {
             System.out.println("Please log in to withdraw money.");
         }
     }
+
+    public void transferTo(String token, String toAccountId, double amount) {
+        UserSession session = sessions.get(token);
+        if (session != null) {
+            if (!hasAccount(session)) {
+                return;
+            }
+            if (!isValidAmount(amount)) {
+                System.out.println("Amount must be positive and at most $" + format(MAX_AMOUNT) + ".");
+            } else if (session.getUsername().equals(toAccountId)) {
+                System.out.println("Cannot transfer to your own account.");
+            } else if (!hasAccount(toAccountId)) {
+                System.out.println("No such account: " + toAccountId + ".");
+            } else {
+                try {
+                    if (transfer(session.getUsername(), toAccountId, amount)) {
+                        System.out.println("Transferred $" + format(amount) + " to " + toAccountId
+                                + ". New balance: $" + format(getBalance(session.getUsername())));
+                    } else {
+                        System.out.println("Insufficient balance.");
+                    }
+                } catch (ArithmeticException ex) {
+                    System.out.println("Transfer refused: the balance of " + toAccountId + " would overflow.");
+                }
+            }
+        } else {
+            System.out.println("Please log in to transfer money.");
+        }
+    }
+
+    // True if amount is at most MAX_AMOUNT and at least one cent once rounded; false for NaN and infinity
+    static boolean isValidAmount(double amount) {
+        return amount > 0 && amount <= MAX_AMOUNT && Math.round(amount * 100) > 0;
+    }
+
+    // Throws IllegalArgumentException if amount is not finite or its size is above MAX_AMOUNT
+    static long toCents(double amount) {
+        if (!(Math.abs(amount) <= MAX_AMOUNT)) {
+            throw new IllegalArgumentException("Amount out of range: " + amount);
+        }
+        return Math.round(amount * 100);
+    }
+
+    private static long toPositiveCents(double amount) {
+        if (!isValidAmount(amount)) {
+            throw new IllegalArgumentException("Amount must be positive and at most " + MAX_AMOUNT + ": " + amount);
+        }
+        return toCents(amount);
+    }
+
+    private static String format(double amount) {
+        return String.format("%.2f", amount);
+    }
 }
 
 public class Main {
-    public static void main(String[] args) {
-        Bank myBank = new Bank(500);
-        UserSession session = UserSession.getInstance();
+    // Balances are kept in bank.journal in the working directory; -Dbank.sync=ALWAYS|INTERVAL|NONE
+    // chooses when it is forced to disk
+    public static void main(String[] args) throws IOException {
+        SessionRegistry sessions = new SessionRegistry();
+        Journal.SyncPolicy policy = Journal.SyncPolicy.valueOf(System.getProperty("bank.sync", "ALWAYS"));
+        Bank myBank = new Bank(sessions, Paths.get("bank.journal"), policy, 100);
         Scanner scanner = new Scanner(System.in);
 
-        session.login("JohnDoe");
+        String token = sessions.login("JohnDoe");
+        // Already open if the journal has it
+        myBank.openAccount("JohnDoe", 500);
 
         while (true) {
             System.out.println("\nPlease choose an option:");
             System.out.println("1. View Balance");
             System.out.println("2. Deposit");
             System.out.println("3. Withdraw");
-            System.out.println("4. Logout and Exit");
+            System.out.println("4. Transfer");
+            System.out.println("5. Logout and Exit");
             System.out.print("Enter your choice: ");
 
             int choice = scanner.nextInt();
 
             switch (choice) {
                 case 1:
-                    myBank.viewBalance();
+                    myBank.viewBalance(token);
                     break;
                 case 2:
                     System.out.print("Enter amount to deposit: ");
                     double depositAmount = scanner.nextDouble();
-                    myBank.deposit(depositAmount);
+                    myBank.deposit(token, depositAmount);
                     break;
                 case 3:
                     System.out.print("Enter amount to withdraw: ");
                     double withdrawAmount = scanner.nextDouble();
-                    myBank.withdraw(withdrawAmount);
+                    myBank.withdraw(token, withdrawAmount);
                     break;
                 case 4:
-                    session.logout();
+                    System.out.print("Enter account to transfer to: ");
+                    String toAccountId = scanner.next();
+                    System.out.print("Enter amount to transfer: ");
+                    double transferAmount = scanner.nextDouble();
+                    myBank.transferTo(token, toAccountId, transferAmount);
+                    break;
+                case 5:
+                    sessions.logout(token);
+                    myBank.close();
                     System.out.println("Exiting the application.");
                     scanner.close();
                     System.exit(0);
@@ -1,53 +1,86 @@
 import java.util.Scanner;
 
-// Singleton Pattern: UserSession to manage user authentication
+// Singleton Pattern: UserSession to manage user authentication.
+// The one login is over IDLE_TIMEOUT_MILLIS after its last touch() or
+// ABSOLUTE_TIMEOUT_MILLIS after login, whichever comes first. Both deadlines
+// are compared whenever the session is asked about, so nothing runs in the
+// background; an expired login is cleared by the next login or logout.
 class UserSession {
-    private static UserSession instance = null;
+    static final long IDLE_TIMEOUT_MILLIS = 15 * 60 * 1000;
+    static final long ABSOLUTE_TIMEOUT_MILLIS = 8 * 60 * 60 * 1000;
+
+    private static volatile UserSession instance;
     private boolean isLoggedIn;
     private String username;
+    private long loginTime;
+    private long lastAccess;
 
     private UserSession() {
         this.isLoggedIn = false;
         this.username = "";
     }
 
+    // Double-checked locking, so concurrent first callers share one session
     public static UserSession getInstance() {
         if (instance == null) {
-            instance = new UserSession();
+            synchronized (UserSession.class) {
+                if (instance == null) {
+                    instance = new UserSession();
+                }
+            }
         }
         return instance;
     }
 
-    public void login(String username) {
-        if (!isLoggedIn) {
+    public synchronized void login(String username) {
+        if (!isLoggedIn()) {
             this.username = username;
             this.isLoggedIn = true;
+            this.loginTime = System.currentTimeMillis();
+            this.lastAccess = loginTime;
             System.out.println(username + " logged in successfully.");
         } else {
             System.out.println("User already logged in.");
         }
     }
 
-    public void logout() {
-        if (isLoggedIn) {
-            this.username = "";
-            this.isLoggedIn = false;
+    public synchronized void logout() {
+        if (isLoggedIn()) {
+            end();
             System.out.println("User logged out successfully.");
+        } else if (isLoggedIn) {
+            end();
+            System.out.println("Session expired.");
         } else {
             System.out.println("No user is logged in.");
         }
     }
 
-    public boolean isLoggedIn() {
-        return isLoggedIn;
+    // Records use of the session, which postpones its idle timeout; does nothing once it has expired
+    public synchronized void touch() {
+        if (isLoggedIn()) {
+            lastAccess = System.currentTimeMillis();
+        }
+    }
+
+    public synchronized boolean isLoggedIn() {
+        return isLoggedIn && System.currentTimeMillis() < expiresAt();
     }
 
-    public String getUsername() {
-        return username;
+    public synchronized String getUsername() {
+        return isLoggedIn() ? username : "";
+    }
+
+    private long expiresAt() {
+        return Math.min(lastAccess + IDLE_TIMEOUT_MILLIS, loginTime + ABSOLUTE_TIMEOUT_MILLIS);
+    }
+
+    private void end() {
+        this.username = "";
+        this.isLoggedIn = false;
     }
 }
 
-// Factory Method Pattern: Vehicle and VehicleFactory for different types of vehicles
 abstract class Vehicle {
     public abstract void startRide();
 }
@@ -177,6 +210,7 @@ public class RideSharingApp {
 
             Vehicle vehicle = vehicleFactory.createVehicle();
             vehicle.startRide();
+            session.touch();
 
             // Payment selection
             System.out.println("Select a payment method:");